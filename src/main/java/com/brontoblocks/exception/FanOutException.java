@@ -0,0 +1,13 @@
+package com.brontoblocks.exception;
+
+/**
+ * Thrown when a fan-out (see {@link com.brontoblocks.thread.FanOut}) does not get the results it needs, either because
+ * too many tasks failed or because the deadline passed. The failures of the individual tasks are attached as
+ * suppressed exceptions.
+ */
+public class FanOutException extends RuntimeException {
+
+    public FanOutException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,8 @@
+package com.brontoblocks.exception;
+
+public class StaleValueException extends RuntimeException {
+
+    public StaleValueException(String message, Throwable lastFailure) {
+        super(message, lastFailure);
+    }
+}
@@ -25,7 +25,9 @@ import com.fasterxml.jackson.databind.type.MapType;
 import com.fasterxml.jackson.datatype.jdk8.Jdk8Module;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
 
+import java.io.FilterInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
@@ -103,6 +105,16 @@ public final class JsonEngine {
     return ofThrowing(() -> objectMapper.writeValueAsString(object)).getOrThrow();
   }
 
+  /**
+   * Encodes a given Java object into its UTF-8 encoded JSON representation.
+   * Except for the return type, it is otherwise semantically identical to {@link JsonEngine#encode(Object)}.
+   * Prefer this method when the result is meant to be written to a channel, a buffer or a file, since it avoids the
+   * intermediate String.
+   */
+  public <T> byte[] encodeToBytes(T object) {
+    return ofThrowing(() -> objectMapper.writeValueAsBytes(object)).getOrThrow();
+  }
+
   /**
    * Creates and returns a new {@code JsonObject} instance, (which is also a {@code JsonNodeWrapper} object).
    * A JsonObject can be used to build custom JSON structures without forcing the creation for a similar class
@@ -145,6 +157,17 @@ public final class JsonEngine {
     return ofThrowing(() -> objectMapper.readValue(jsonStr, clazz)).getOrThrow();
   }
 
+  /**
+   * Decodes UTF-8 encoded JSON content read from the given stream into a Java object of the specified type.
+   * The content is parsed incrementally, so the whole document is never materialized as a String.
+   * The stream is NOT closed by this method.
+   * Except for the input type, it is otherwise semantically identical
+   * to {@link JsonEngine#decode(String jsonStr, Class<T> clazz)}
+   */
+  public <T> T decode(InputStream inputStream, Class<T> clazz) {
+    return ofThrowing(() -> objectMapper.readValue(nonClosing(inputStream), clazz)).getOrThrow();
+  }
+
   /**
    * Decodes a JSON string into an {@code ArrayList} of Java objects of the specified type.
    * Except for the return type, it is otherwise semantically identical
@@ -236,6 +259,15 @@ public final class JsonEngine {
     return objectMapper.getTypeFactory().constructMapType(mapClass, keyClass, valueClass);
   }
 
+  private static InputStream nonClosing(InputStream inputStream) {
+    return new FilterInputStream(nonNull("inputStream", inputStream)) {
+      @Override
+      public void close() {
+        // Closing is the responsibility of the caller
+      }
+    };
+  }
+
   private JsonEngine(ObjectMapper objectMapper) {
     this.objectMapper = objectMapper;
   }
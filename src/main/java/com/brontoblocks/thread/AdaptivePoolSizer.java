@@ -0,0 +1,215 @@
+package com.brontoblocks.thread;
+
+import com.brontoblocks.chrono.TimeKeeper;
+
+import java.time.Duration;
+
+import static com.brontoblocks.utils.ArgCheck.RangeArgCheckMode.INCLUSIVE_INCLUSIVE;
+import static com.brontoblocks.utils.ArgCheck.inRange;
+import static com.brontoblocks.utils.ArgCheck.noNegativeInt;
+import static com.brontoblocks.utils.ArgCheck.nonNull;
+
+/**
+ * Decides the size of an adaptive pool (see {@link ThreadPoolRegistry#storeAdaptiveThreadPool(Enum, AdaptivePoolSizer)})
+ * from the pool's metrics, sampled at a fixed interval.
+ *
+ * The size is derived from Little's law: the number of busy threads needed equals the arrival rate of tasks times
+ * their mean execution time. On top of that, enough threads are added to drain the tasks already queued within one
+ * sampling interval, and the result is divided by the target utilization to leave some headroom. When the estimate
+ * lags behind (e.g. tasks wait in the queue longer than the target queue latency even though the estimate does not
+ * ask for more threads) the pool grows by a quarter of its size on every sample, until the latency is back on target.
+ *
+ * The pool grows to the new estimate at once, so that it reacts to a load spike within a single sampling interval,
+ * whereas it shrinks halfway towards the estimate on every sample, so that a short lull does not release threads
+ * that will be needed again right after.
+ *
+ * Usage example
+ * <pre>
+ *   AdaptivePoolSizer.builder(2, 256)
+ *       .withTargetQueueLatency(Duration.ofMillis(5))
+ *       .withSamplingInterval(Duration.ofMillis(500))
+ *       .build();
+ * </pre>
+ *
+ * A sizer keeps the state of the pool it sizes, hence it must not be shared between pools.
+ * This class is NOT thread safe. The registry calls it from a single thread.
+ */
+public final class AdaptivePoolSizer {
+
+    /**
+     * @param minPoolSize The min size of the pool.
+     * @param maxPoolSize The max size of the pool.
+     */
+    public static AdaptivePoolSizerBuilder builder(int minPoolSize, int maxPoolSize) {
+        final var minSize = inRange("minPoolSize", minPoolSize, 1, Integer.MAX_VALUE, INCLUSIVE_INCLUSIVE);
+        final var maxSize = inRange("maxPoolSize", maxPoolSize, minSize, Integer.MAX_VALUE, INCLUSIVE_INCLUSIVE);
+        return new AdaptivePoolSizerBuilder(minSize, maxSize);
+    }
+
+    public int getMinPoolSize() {
+        return minPoolSize;
+    }
+
+    public int getMaxPoolSize() {
+        return maxPoolSize;
+    }
+
+    public int getPoolSize() {
+        return poolSize;
+    }
+
+    public Duration getSamplingInterval() {
+        return Duration.ofNanos(samplingIntervalInNanos);
+    }
+
+    /**
+     * Feeds the sizer with the current (cumulative) metrics of the pool.
+     * @return The size the pool should have from now on.
+     */
+    public int resize(ThreadPoolStats stats) {
+        nonNull("stats", stats);
+
+        final var now = timeKeeper.getNanoTime();
+        final var sample = new Sample(now, stats.completedTaskCount(), stats.queueSize(),
+                stats.executionTime().count(), stats.executionTime().sumInNanos(),
+                stats.queueWaitTime().count(), stats.queueWaitTime().sumInNanos());
+
+        final var previous = lastSample;
+        lastSample = sample;
+        if (previous == null || now - previous.atNanos() <= 0L) {
+            return poolSize;
+        }
+
+        final var elapsedNanos = (double) (now - previous.atNanos());
+        final var executed = sample.executionCount() - previous.executionCount();
+        if (executed > 0L) {
+            meanExecutionTimeInNanos = (sample.executionSumInNanos() - previous.executionSumInNanos()) / (double) executed;
+        }
+
+        final var waited = sample.queueWaitCount() - previous.queueWaitCount();
+        final var meanQueueWaitInNanos = waited > 0L
+                ? (sample.queueWaitSumInNanos() - previous.queueWaitSumInNanos()) / (double) waited
+                : 0.0;
+
+        final var isQueueLatencyOffTarget = meanQueueWaitInNanos > targetQueueLatencyInNanos
+                || (sample.queueSize() > 0 && sample.completedTaskCount() == previous.completedTaskCount());
+
+        var target = poolSize;
+        if (meanExecutionTimeInNanos > 0.0) {
+            final var arrived = Math.max(0L, sample.completedTaskCount() - previous.completedTaskCount()
+                    + sample.queueSize() - previous.queueSize());
+            final var busyThreads = arrived / elapsedNanos * meanExecutionTimeInNanos;
+            final var drainingThreads = sample.queueSize() * meanExecutionTimeInNanos / samplingIntervalInNanos;
+            target = (int) Math.min(Integer.MAX_VALUE, Math.ceil((busyThreads + drainingThreads) / targetUtilization));
+        }
+
+        if (isQueueLatencyOffTarget && target <= poolSize) {
+            target = poolSize + Math.max(1, poolSize / 4);
+        } else if (!isQueueLatencyOffTarget && target < poolSize) {
+            target = target + (poolSize - target) / 2;
+        }
+
+        poolSize = Math.max(minPoolSize, Math.min(maxPoolSize, target));
+        return poolSize;
+    }
+
+    private AdaptivePoolSizer(AdaptivePoolSizerBuilder builder) {
+        this.minPoolSize = builder.minPoolSize;
+        this.maxPoolSize = builder.maxPoolSize;
+        this.targetQueueLatencyInNanos = builder.targetQueueLatencyInNanos;
+        this.targetUtilization = builder.targetUtilization;
+        this.samplingIntervalInNanos = builder.samplingIntervalInNanos;
+        this.timeKeeper = builder.timeKeeper;
+        this.poolSize = Math.max(minPoolSize, Math.min(maxPoolSize, builder.initialPoolSize));
+        this.meanExecutionTimeInNanos = 0.0;
+        this.lastSample = null;
+    }
+
+    private final int minPoolSize;
+    private final int maxPoolSize;
+    private final long targetQueueLatencyInNanos;
+    private final double targetUtilization;
+    private final long samplingIntervalInNanos;
+    private final TimeKeeper timeKeeper;
+    private int poolSize;
+    private double meanExecutionTimeInNanos;
+    private Sample lastSample;
+
+    private record Sample(long atNanos, long completedTaskCount, int queueSize, long executionCount,
+                          long executionSumInNanos, long queueWaitCount, long queueWaitSumInNanos) { }
+
+    public static final class AdaptivePoolSizerBuilder {
+
+        private AdaptivePoolSizerBuilder(int minPoolSize, int maxPoolSize) {
+            this.minPoolSize = minPoolSize;
+            this.maxPoolSize = maxPoolSize;
+            this.initialPoolSize = Runtime.getRuntime().availableProcessors();
+            this.targetQueueLatencyInNanos = DEFAULT_TARGET_QUEUE_LATENCY.toNanos();
+            this.targetUtilization = DEFAULT_TARGET_UTILIZATION;
+            this.samplingIntervalInNanos = DEFAULT_SAMPLING_INTERVAL.toNanos();
+            this.timeKeeper = TimeKeeper.createWithRealTimeKeeping();
+        }
+
+        /**
+         * The size of the pool before the first resize. Default value: the number of cores (within bounds).
+         */
+        public AdaptivePoolSizerBuilder withInitialPoolSize(int initialPoolSize) {
+            this.initialPoolSize = noNegativeInt("initialPoolSize", initialPoolSize);
+            return this;
+        }
+
+        /**
+         * The mean time tasks may wait in the queue before the pool grows regardless of the estimated demand.
+         * Default value: 10 millis
+         */
+        public AdaptivePoolSizerBuilder withTargetQueueLatency(Duration targetQueueLatency) {
+            this.targetQueueLatencyInNanos = toPositiveNanos("targetQueueLatency", targetQueueLatency);
+            return this;
+        }
+
+        /**
+         * @param targetUtilization The fraction (0.0 - 1.0] of the threads that should be busy under steady load.
+         *                          Default value: 0.8
+         */
+        public AdaptivePoolSizerBuilder withTargetUtilization(double targetUtilization) {
+            if (!(targetUtilization > 0.0 && targetUtilization <= 1.0)) {
+                throw new IllegalArgumentException("Argument:targetUtilization invalid. Failed 'in-range' check.");
+            }
+            this.targetUtilization = targetUtilization;
+            return this;
+        }
+
+        /**
+         * Default value: 1 second
+         */
+        public AdaptivePoolSizerBuilder withSamplingInterval(Duration samplingInterval) {
+            this.samplingIntervalInNanos = toPositiveNanos("samplingInterval", samplingInterval);
+            return this;
+        }
+
+        public AdaptivePoolSizerBuilder withTimeKeeper(TimeKeeper timeKeeper) {
+            this.timeKeeper = nonNull("timeKeeper", timeKeeper);
+            return this;
+        }
+
+        public AdaptivePoolSizer build() {
+            return new AdaptivePoolSizer(this);
+        }
+
+        private static long toPositiveNanos(String argName, Duration duration) {
+            return inRange(argName, nonNull(argName, duration).toNanos(), 1L, Long.MAX_VALUE, INCLUSIVE_INCLUSIVE);
+        }
+
+        private final int minPoolSize;
+        private final int maxPoolSize;
+        private int initialPoolSize;
+        private long targetQueueLatencyInNanos;
+        private double targetUtilization;
+        private long samplingIntervalInNanos;
+        private TimeKeeper timeKeeper;
+
+        private static final Duration DEFAULT_TARGET_QUEUE_LATENCY = Duration.ofMillis(10);
+        private static final double DEFAULT_TARGET_UTILIZATION = 0.8;
+        private static final Duration DEFAULT_SAMPLING_INTERVAL = Duration.ofSeconds(1);
+    }
+}
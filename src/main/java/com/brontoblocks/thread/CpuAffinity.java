@@ -0,0 +1,102 @@
+package com.brontoblocks.thread;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.OptionalLong;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static com.brontoblocks.utils.ArgCheck.nonNull;
+
+/**
+ * Pins threads to specific cores (Linux only), so that latency critical threads are not migrated between cores by the
+ * scheduler. Works best when the cores are isolated from the scheduler (e.g. the isolcpus kernel parameter).
+ *
+ * The affinity is set through the taskset utility (util-linux) on the calling thread's native id, which is read from
+ * /proc/thread-self. Setting the affinity through sched_setaffinity directly requires the Foreign Function API, which
+ * is not final on the Java version this library targets.
+ *
+ * Pinning is best effort: on other operating systems, or when taskset is missing or fails (e.g. the cores are outside
+ * the process' cpuset), the thread keeps running unpinned and pinCurrentThread(...) returns false.
+ */
+public final class CpuAffinity {
+
+    /**
+     * @return True if threads can be pinned on this machine.
+     */
+    public static boolean isSupported() {
+        return TASKSET != null;
+    }
+
+    /**
+     * Restricts the calling thread to run on the given cores only.
+     * @param cpus The ids of the cores (0 based), as listed in /proc/cpuinfo.
+     * @return True if the affinity was set, false if pinning is not supported or failed.
+     */
+    public static boolean pinCurrentThread(int... cpus) {
+        nonNull("cpus", cpus);
+        if (cpus.length == 0 || Arrays.stream(cpus).anyMatch(cpu -> cpu < 0)) {
+            throw new IllegalArgumentException("Argument:cpus invalid. Non-empty list of non-negative ids expected.");
+        }
+
+        final var threadId = getNativeThreadId();
+        if (!isSupported() || threadId.isEmpty()) {
+            return false;
+        }
+
+        final var cpuList = Arrays.stream(cpus).mapToObj(Integer::toString).collect(Collectors.joining(","));
+        try {
+            final var process = new ProcessBuilder(TASKSET.toString(), "-p", "-c", cpuList,
+                    Long.toString(threadId.getAsLong()))
+                    .redirectErrorStream(true)
+                    .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                    .start();
+
+            if (!process.waitFor(TASKSET_TIMEOUT_IN_SECONDS, TimeUnit.SECONDS)) {
+                process.destroyForcibly();
+                return false;
+            }
+            return process.exitValue() == 0;
+        } catch (IOException ex) {
+            return false;
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * @return The id the kernel knows the calling thread by (as shown by top -H), if it can be resolved.
+     */
+    public static OptionalLong getNativeThreadId() {
+        try {
+            // A link to /proc/<pid>/task/<tid>
+            final var taskPath = Files.readSymbolicLink(THREAD_SELF);
+            return OptionalLong.of(Long.parseLong(taskPath.getFileName().toString()));
+        } catch (IOException | UnsupportedOperationException | SecurityException | NumberFormatException ex) {
+            return OptionalLong.empty();
+        }
+    }
+
+    private static Path findTaskset() {
+        if (!System.getProperty("os.name", "").toLowerCase().startsWith("linux") || !Files.exists(THREAD_SELF)) {
+            return null;
+        }
+
+        return Arrays.stream(System.getenv().getOrDefault("PATH", "/usr/bin:/bin").split(":"))
+                .filter(dir -> !dir.isBlank())
+                .map(dir -> Path.of(dir, "taskset"))
+                .filter(Files::isExecutable)
+                .findFirst()
+                .orElse(null);
+    }
+
+    private CpuAffinity() {
+    }
+
+    private static final Path THREAD_SELF = Path.of("/proc/thread-self");
+    private static final Path TASKSET = findTaskset();
+    private static final long TASKSET_TIMEOUT_IN_SECONDS = 5L;
+}
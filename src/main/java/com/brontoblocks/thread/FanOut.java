@@ -0,0 +1,367 @@
+package com.brontoblocks.thread;
+
+import com.brontoblocks.exception.FanOutException;
+import com.brontoblocks.exception.WrappedCheckedException;
+import com.brontoblocks.utils.LatencyHistogram;
+import com.brontoblocks.utils.Try;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.brontoblocks.utils.ArgCheck.RangeArgCheckMode.INCLUSIVE_INCLUSIVE;
+import static com.brontoblocks.utils.ArgCheck.inRange;
+import static com.brontoblocks.utils.ArgCheck.noNegativeLong;
+import static com.brontoblocks.utils.ArgCheck.nonNull;
+import static java.lang.String.format;
+
+/**
+ * Fans a request out to several tasks (e.g. calls to replicated backends) and collects the results the caller needs,
+ * within a deadline. By the time a method returns (or throws), every task it started has either completed or been
+ * cancelled (interrupted). Cancelled tasks are not awaited, so that the deadline holds whatever the tasks do: a
+ * cancelled task may still be winding down after the call returns.
+ *
+ * <ul>
+ *     <li>{@code invokeAll} - Waits for every task, up to the deadline, and reports the outcome of each one.</li>
+ *     <li>{@code firstSuccessful} - Returns the first successful result and cancels the rest.</li>
+ *     <li>{@code quorum} - Returns as soon as the given number of tasks succeed, or fails as soon as that number can
+ *     no longer be reached.</li>
+ *     <li>{@code hedged} - Sends a request and, if no response arrives within the hedge delay, a second (hedge)
+ *     request. The first successful response wins. Hedging after the 95th percentile of the observed latency costs
+ *     about 5% extra requests and cuts the tail latency caused by slow (rather than failing) backends.</li>
+ * </ul>
+ *
+ * Usage example
+ * <pre>
+ *   var fanOut = FanOut.onVirtualThreads();
+ *   var latencies = LatencyHistogram.create();
+ *
+ *   var price = fanOut.hedged(() -&gt; pricingClient.price(sku), latencies, 95.0, Duration.ofMillis(200));
+ *   var replicas = fanOut.quorum(List.of(() -&gt; a.read(key), () -&gt; b.read(key), () -&gt; c.read(key)), 2,
+ *       Duration.ofMillis(100));
+ * </pre>
+ *
+ * Tasks should respond to interruption, otherwise a cancelled task keeps running in the background until it completes
+ * on its own.
+ * This class IS thread safe.
+ */
+public final class FanOut {
+
+    public static FanOut on(Executor executor) {
+        return new FanOut(nonNull("executor", executor));
+    }
+
+    /**
+     * Runs every task in a virtual thread of its own or, on JVMs without virtual threads support (prior to Java 21),
+     * in a daemon platform thread of its own.
+     */
+    public static FanOut onVirtualThreads() {
+        return VirtualThreads.FAN_OUT;
+    }
+
+    /**
+     * Runs all the tasks concurrently and waits for all of them to complete, up to the deadline. Tasks still running
+     * by then are cancelled.
+     * @return The outcome of every task, in the order of the given tasks. Tasks that did not complete in time are
+     * reported as failed with a {@link TimeoutException}.
+     */
+    public <T> List<Try<T>> invokeAll(List<? extends Callable<T>> tasks, Duration deadline) {
+        nonNull("tasks", tasks);
+        final var deadlineAt = deadlineAt(deadline);
+
+        final var scope = new Scope<T>(executor);
+        try {
+            final var futures = new ArrayList<Future<T>>(tasks.size());
+            tasks.forEach(task -> futures.add(scope.submit(task)));
+
+            for (int completed = 0; completed < futures.size(); completed++) {
+                if (scope.poll(deadlineAt) == null) {
+                    break;
+                }
+            }
+
+            // Cancel the late ones before collecting the outcomes
+            scope.cancelAll();
+            return futures.stream().map(FanOut::toTry).toList();
+        } finally {
+            scope.cancelAll();
+        }
+    }
+
+    /**
+     * Runs all the tasks concurrently and returns the first successful result. The remaining tasks are cancelled.
+     * @throws FanOutException if every task failed or the deadline passed.
+     */
+    public <T> T firstSuccessful(List<? extends Callable<T>> tasks, Duration deadline) {
+        return race(nonEmpty(tasks), 0L, deadlineAt(deadline), null);
+    }
+
+    /**
+     * Runs all the tasks concurrently and returns as soon as the given number of tasks succeed. The remaining tasks
+     * are cancelled.
+     * @return The results of the tasks that succeeded, in completion order.
+     * @throws FanOutException if so many tasks failed that the quorum can no longer be reached, or the deadline passed.
+     */
+    public <T> List<T> quorum(List<? extends Callable<T>> tasks, int quorum, Duration deadline) {
+        final var required = inRange("quorum", quorum, 1, nonEmpty(tasks).size(), INCLUSIVE_INCLUSIVE);
+        final var deadlineAt = deadlineAt(deadline);
+
+        final var scope = new Scope<T>(executor);
+        try {
+            tasks.forEach(scope::submit);
+
+            final var results = new ArrayList<T>(required);
+            while (results.size() < required) {
+                final var future = scope.poll(deadlineAt);
+                if (future == null) {
+                    throw scope.failure(format("Quorum of %d not reached within the deadline (%d succeeded).",
+                            required, results.size()), new TimeoutException());
+                }
+
+                try {
+                    results.add(scope.getResult(future));
+                } catch (ExecutionException ex) {
+                    scope.addFailure(ex.getCause());
+                    if (scope.getFailureCount() > tasks.size() - required) {
+                        throw scope.failure(format("Quorum of %d can no longer be reached (%d of %d tasks failed).",
+                                required, scope.getFailureCount(), tasks.size()), null);
+                    }
+                }
+            }
+            return results;
+        } finally {
+            scope.cancelAll();
+        }
+    }
+
+    /**
+     * Sends the request and, unless it succeeds within hedgeAfter, sends it once more. The first successful response
+     * is returned and the other request is cancelled. If the first request fails before hedgeAfter, the hedge request
+     * is sent right away.
+     * @throws FanOutException if both requests failed or the deadline passed.
+     */
+    public <T> T hedged(Callable<T> request, Duration hedgeAfter, Duration deadline) {
+        return hedged(request, request, hedgeAfter, deadline);
+    }
+
+    /**
+     * Same as hedged(request, hedgeAfter, deadline), but the hedge request may differ from the primary one (e.g. it
+     * targets another replica).
+     */
+    public <T> T hedged(Callable<T> primary, Callable<T> hedge, Duration hedgeAfter, Duration deadline) {
+        nonNull("primary", primary);
+        nonNull("hedge", hedge);
+        final var hedgeAfterInNanos = noNegativeLong("hedgeAfter", nonNull("hedgeAfter", hedgeAfter).toNanos());
+
+        return race(List.of(primary, hedge), hedgeAfterInNanos, deadlineAt(deadline), null);
+    }
+
+    /**
+     * Same as hedged(request, hedgeAfter, deadline), where hedgeAfter is the given percentile of the latency observed
+     * so far. The latency of every successful request is recorded in the given histogram, hence the hedge delay
+     * follows the backend's latency as it changes. Until enough latencies have been observed, no hedge request is
+     * sent.
+     * @param percentile A value in range [0, 100], e.g. 95.0
+     */
+    public <T> T hedged(Callable<T> request, LatencyHistogram observedLatency, double percentile, Duration deadline) {
+        nonNull("request", request);
+        nonNull("observedLatency", observedLatency);
+
+        final var deadlineAt = deadlineAt(deadline);
+        final var snapshot = observedLatency.snapshot();
+        final var hedgeAfterInNanos = snapshot.count() < MIN_OBSERVED_LATENCIES_TO_HEDGE
+                ? Long.MAX_VALUE
+                : snapshot.percentileInNanos(percentile);
+
+        return race(List.of(request, request), hedgeAfterInNanos, deadlineAt, observedLatency);
+    }
+
+    /**
+     * Starts the tasks one after the other, every staggerInNanos or as soon as all the running ones have failed, and
+     * returns the first successful result.
+     */
+    private <T> T race(List<? extends Callable<T>> tasks, long staggerInNanos, long deadlineAt,
+                       LatencyHistogram observedLatency) {
+        final var scope = new Scope<T>(executor);
+        try {
+            var nextStartAt = System.nanoTime();
+            while (true) {
+                final var started = scope.getStartedCount();
+                final var now = System.nanoTime();
+                if (started < tasks.size() && (started == scope.getFailureCount() || now - nextStartAt >= 0L)) {
+                    scope.submit(tasks.get(started));
+                    nextStartAt = saturatedAdd(now, staggerInNanos);
+                    continue;
+                }
+
+                final var waitUntil = started < tasks.size() && nextStartAt - deadlineAt < 0L ? nextStartAt : deadlineAt;
+                final var future = scope.poll(waitUntil);
+                if (future == null) {
+                    if (deadlineAt - System.nanoTime() <= 0L) {
+                        throw scope.failure("No task succeeded within the deadline.", new TimeoutException());
+                    }
+                    continue;
+                }
+
+                try {
+                    final var result = scope.getResult(future);
+                    if (observedLatency != null) {
+                        observedLatency.record(System.nanoTime() - scope.getStartedAt(future));
+                    }
+                    return result;
+                } catch (ExecutionException ex) {
+                    scope.addFailure(ex.getCause());
+                    if (scope.getFailureCount() == tasks.size()) {
+                        throw scope.failure(format("All %d tasks failed.", tasks.size()), null);
+                    }
+                }
+            }
+        } finally {
+            scope.cancelAll();
+        }
+    }
+
+    private static <T> Try<T> toTry(Future<T> future) {
+        if (!future.isDone() || future.isCancelled()) {
+            return Try.of(() -> {
+                throw WrappedCheckedException.of(new TimeoutException("Task did not complete within the deadline."));
+            });
+        }
+
+        try {
+            final var result = future.get();
+            return Try.of(() -> result);
+        } catch (ExecutionException ex) {
+            final var cause = ex.getCause();
+            return Try.of(() -> {
+                throw cause instanceof RuntimeException runtimeException
+                        ? runtimeException
+                        : WrappedCheckedException.of(cause);
+            });
+        } catch (InterruptedException | CancellationException ex) {
+            // Not reachable, the future is done and not cancelled
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    private static <L extends List<?>> L nonEmpty(L tasks) {
+        if (nonNull("tasks", tasks).isEmpty()) {
+            throw new IllegalArgumentException("Argument:tasks invalid. Non-empty list expected.");
+        }
+        return tasks;
+    }
+
+    private static long deadlineAt(Duration deadline) {
+        final var deadlineInNanos = noNegativeLong("deadline", nonNull("deadline", deadline).toNanos());
+        return saturatedAdd(System.nanoTime(), deadlineInNanos);
+    }
+
+    private static long saturatedAdd(long nanoTime, long durationInNanos) {
+        // nanoTime values are compared through their difference, hence a deadline must stay within Long.MAX_VALUE
+        // nanos of now. Cap far away deadlines (~146 years) accordingly.
+        return nanoTime + Math.min(durationInNanos, Long.MAX_VALUE / 2);
+    }
+
+    private FanOut(Executor executor) {
+        this.executor = executor;
+    }
+
+    private final Executor executor;
+
+    private static final long MIN_OBSERVED_LATENCIES_TO_HEDGE = 20L;
+
+    /**
+     * Keeps track of the tasks started by a single fan-out.
+     */
+    private static final class Scope<T> {
+
+        private Scope(Executor executor) {
+            this.completionService = new ExecutorCompletionService<>(executor);
+            this.startedAt = new HashMap<>();
+            this.failures = new ArrayList<>();
+        }
+
+        private Future<T> submit(Callable<T> task) {
+            final var future = completionService.submit(nonNull("task", task));
+            startedAt.put(future, System.nanoTime());
+            return future;
+        }
+
+        /**
+         * @return The next completed task, or null if none completed until the given time.
+         */
+        private Future<T> poll(long until) {
+            try {
+                return completionService.poll(Math.max(0L, until - System.nanoTime()), TimeUnit.NANOSECONDS);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw failure("Interrupted while waiting for tasks.", ex);
+            }
+        }
+
+        /**
+         * @param future A completed task.
+         * @throws ExecutionException if the task failed.
+         */
+        private T getResult(Future<T> future) throws ExecutionException {
+            try {
+                return future.get();
+            } catch (InterruptedException ex) {
+                // Not reachable, the task has completed hence get() does not wait
+                Thread.currentThread().interrupt();
+                throw failure("Interrupted while collecting results.", ex);
+            }
+        }
+
+        private void addFailure(Throwable failure) {
+            failures.add(failure);
+        }
+
+        private FanOutException failure(String message, Throwable cause) {
+            final var exception = new FanOutException(message, cause);
+            failures.forEach(exception::addSuppressed);
+            return exception;
+        }
+
+        private void cancelAll() {
+            startedAt.keySet().forEach(future -> future.cancel(true));
+        }
+
+        private int getStartedCount() {
+            return startedAt.size();
+        }
+
+        private int getFailureCount() {
+            return failures.size();
+        }
+
+        private long getStartedAt(Future<T> future) {
+            return startedAt.get(future);
+        }
+
+        private final ExecutorCompletionService<T> completionService;
+        private final Map<Future<T>, Long> startedAt;
+        private final List<Throwable> failures;
+    }
+
+    private static final class VirtualThreads {
+
+        private static final AtomicInteger THREAD_COUNTER = new AtomicInteger();
+
+        private static final FanOut FAN_OUT = new FanOut(ThreadPerTaskExecutor.create(
+                ThreadUtils.virtualThreadFactory("fan-out-").orElseGet(() -> runnable ->
+                        ThreadUtils.newDaemonThread("fan-out-" + THREAD_COUNTER.getAndIncrement(), runnable)),
+                Integer.MAX_VALUE));
+    }
+}
@@ -0,0 +1,510 @@
+package com.brontoblocks.thread;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import static com.brontoblocks.utils.ArgCheck.RangeArgCheckMode.INCLUSIVE_INCLUSIVE;
+import static com.brontoblocks.utils.ArgCheck.inRange;
+import static com.brontoblocks.utils.ArgCheck.noNegativeLong;
+import static com.brontoblocks.utils.ArgCheck.nonEmpty;
+import static com.brontoblocks.utils.ArgCheck.nonNull;
+
+/**
+ * A timer suited to a large number of short lived timeouts, such as request deadlines, that are mostly cancelled
+ * before they expire. Scheduling and cancelling a task are O(1) and do not take any lock, as opposed to
+ * {@link java.util.concurrent.ScheduledThreadPoolExecutor} whose delay queue is a binary heap guarded by a lock.
+ *
+ * Tasks are kept in a wheel of buckets. A single thread advances the wheel by one bucket every tick and expires the
+ * tasks of that bucket whose deadline has been reached, hence tasks run late by up to one tick. Tasks whose deadline is
+ * more than one revolution ahead stay in their bucket for as many revolutions.
+ *
+ * Expired tasks run on the timer thread, unless a task executor is given, hence they should be short (e.g. completing a
+ * future exceptionally). Long running tasks should be handed off to another executor.
+ *
+ * Usage example
+ * <pre>
+ *   var timer = HashedWheelTimer.builder("request-deadlines")
+ *       .withTickDuration(Duration.ofMillis(5))
+ *       .build();
+ *
+ *   var deadline = timer.schedule(() -&gt; request.cancel(true), Duration.ofMillis(250));
+ *   ...
+ *   deadline.cancel();
+ * </pre>
+ *
+ * The timer thread is started upon the first scheduled task and is a daemon thread.
+ * This class IS thread safe.
+ */
+public final class HashedWheelTimer implements AutoCloseable {
+
+    public static HashedWheelTimerBuilder builder(String name) {
+        return new HashedWheelTimerBuilder(nonEmpty("name", name));
+    }
+
+    /**
+     * Runs the task once, after the given delay.
+     * @throws RejectedExecutionException if the timer has been stopped.
+     */
+    public Timeout schedule(Runnable task, Duration delay) {
+        return schedule(nonNull("task", task), toNanos("delay", delay), 0L);
+    }
+
+    /**
+     * Runs the task after the initial delay and then every period, until the returned timeout is cancelled. Deadlines
+     * are computed from the initial one (not from the end of the previous run), hence runs do not drift. A run that is
+     * late by more than one period is not repeated.
+     * @throws RejectedExecutionException if the timer has been stopped.
+     */
+    public Timeout scheduleAtFixedRate(Runnable task, Duration initialDelay, Duration period) {
+        final var periodInNanos = inRange("period", nonNull("period", period).toNanos(), 1L, Long.MAX_VALUE,
+                INCLUSIVE_INCLUSIVE);
+        return schedule(nonNull("task", task), toNanos("initialDelay", initialDelay), periodInNanos);
+    }
+
+    /**
+     * @return The number of scheduled tasks which have neither expired nor been cancelled yet.
+     */
+    public long getPendingTimeoutCount() {
+        return pendingTimeoutCount.get();
+    }
+
+    /**
+     * Stops the timer thread. Pending tasks never run. Tasks scheduled concurrently with stop are either rejected or
+     * returned as pending.
+     * @return The tasks that were pending.
+     * @throws IllegalStateException if called from a task running on the timer thread, since stop waits for that
+     * thread to terminate.
+     */
+    public List<Runnable> stop() {
+        if (Thread.currentThread() == worker) {
+            throw new IllegalStateException("%s.stop() cannot be called from a task running on the timer thread"
+                    .formatted(HashedWheelTimer.class.getSimpleName()));
+        }
+
+        if (workerState.getAndSet(WORKER_STOPPED) != WORKER_STARTED) {
+            return List.of();
+        }
+
+        boolean interrupted = false;
+        while (worker.isAlive()) {
+            worker.interrupt();
+            try {
+                worker.join(100L);
+            } catch (InterruptedException ex) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+
+        return unprocessedTasks;
+    }
+
+    @Override
+    public void close() {
+        stop();
+    }
+
+    private Timeout schedule(Runnable task, long delayInNanos, long periodInNanos) {
+        startIfNeeded();
+
+        final var deadline = saturatedAdd(System.nanoTime() - startTime, delayInNanos);
+        final var timeout = new WheelTimeout(task, deadline, periodInNanos);
+        pendingTimeoutCount.incrementAndGet();
+        newTimeouts.add(timeout);
+
+        // The timer may have been stopped in the meantime. Either the timeout is still queued, in which case it is
+        // withdrawn and rejected, or the stopped worker has already collected it along with the pending tasks.
+        if (workerState.get() == WORKER_STOPPED && newTimeouts.remove(timeout)) {
+            pendingTimeoutCount.decrementAndGet();
+            throw new RejectedExecutionException("Timer has been stopped");
+        }
+        return timeout;
+    }
+
+    private void startIfNeeded() {
+        switch (workerState.get()) {
+            case WORKER_INIT -> {
+                if (workerState.compareAndSet(WORKER_INIT, WORKER_STARTED)) {
+                    final var now = System.nanoTime();
+                    // Zero stands for 'not started yet'
+                    startTime = now == 0L ? 1L : now;
+                    worker.start();
+                } else {
+                    startIfNeeded();
+                }
+            }
+            case WORKER_STARTED -> {
+                while (startTime == 0L) {
+                    // Another thread is about to set the start time
+                    Thread.onSpinWait();
+                }
+            }
+            default -> throw new RejectedExecutionException("Timer has been stopped");
+        }
+    }
+
+    private void runWorker() {
+        long tick = 0L;
+        while (workerState.get() == WORKER_STARTED) {
+            final var tickDeadline = awaitTick(tick);
+            if (tickDeadline < 0L) {
+                break;
+            }
+
+            processCancelledTimeouts();
+            transferNewTimeouts(tick);
+            expireTimeouts(buckets[(int) (tick & mask)], tickDeadline, tick);
+            tick++;
+        }
+
+        // Collect whatever was left behind
+        final var unprocessed = new ArrayList<Runnable>();
+        for (Bucket bucket : buckets) {
+            bucket.drainTo(unprocessed);
+        }
+        WheelTimeout timeout;
+        while ((timeout = newTimeouts.poll()) != null) {
+            if (!timeout.isCancelled()) {
+                unprocessed.add(timeout.task);
+            }
+        }
+        unprocessedTasks = List.copyOf(unprocessed);
+    }
+
+    /**
+     * @return The time the given tick ends at (relative to the start time), or -1 if the timer has been stopped.
+     */
+    private long awaitTick(long tick) {
+        final var tickDeadline = tickDurationInNanos * (tick + 1);
+        while (true) {
+            final var sleepInNanos = tickDeadline - (System.nanoTime() - startTime);
+            if (sleepInNanos <= 0L) {
+                return tickDeadline;
+            }
+
+            LockSupport.parkNanos(this, sleepInNanos);
+            if (Thread.interrupted() && workerState.get() == WORKER_STOPPED) {
+                return -1L;
+            }
+        }
+    }
+
+    private void transferNewTimeouts(long tick) {
+        // Bound the work per tick, so that a flood of new timeouts cannot delay the expiration of the current bucket
+        for (int i = 0; i < MAX_TRANSFERS_PER_TICK; i++) {
+            final var timeout = newTimeouts.poll();
+            if (timeout == null) {
+                return;
+            }
+            if (!timeout.isCancelled()) {
+                place(timeout, tick);
+            }
+        }
+    }
+
+    private void place(WheelTimeout timeout, long currentTick) {
+        final var calculatedTick = timeout.deadline / tickDurationInNanos;
+        // Never place a timeout in the past. Late ones expire within the current tick.
+        final var tick = Math.max(calculatedTick, currentTick);
+        timeout.remainingRounds = (tick - currentTick) / buckets.length;
+        buckets[(int) (tick & mask)].add(timeout);
+    }
+
+    private void processCancelledTimeouts() {
+        WheelTimeout timeout;
+        while ((timeout = cancelledTimeouts.poll()) != null) {
+            if (timeout.bucket != null) {
+                timeout.bucket.remove(timeout);
+            }
+        }
+    }
+
+    private void expireTimeouts(Bucket bucket, long tickDeadline, long tick) {
+        var timeout = bucket.head;
+        while (timeout != null) {
+            final var next = timeout.next;
+            if (timeout.remainingRounds <= 0L && timeout.deadline <= tickDeadline) {
+                bucket.remove(timeout);
+                expire(timeout, tickDeadline, tick);
+            } else {
+                timeout.remainingRounds--;
+            }
+            timeout = next;
+        }
+    }
+
+    private void expire(WheelTimeout timeout, long tickDeadline, long tick) {
+        final var isPeriodic = timeout.periodInNanos > 0L;
+        if (!timeout.compareAndSetState(ST_PENDING, isPeriodic ? ST_RUNNING : ST_EXPIRED)) {
+            return;
+        }
+
+        if (!isPeriodic) {
+            pendingTimeoutCount.decrementAndGet();
+            run(timeout.task);
+            return;
+        }
+
+        run(timeout.task);
+
+        // Skip the runs we are late for and schedule the next one
+        final var missedPeriods = Math.max(0L, (tickDeadline - timeout.deadline) / timeout.periodInNanos);
+        timeout.deadline = saturatedAdd(timeout.deadline, saturatedMultiply(missedPeriods + 1, timeout.periodInNanos));
+        if (timeout.compareAndSetState(ST_RUNNING, ST_PENDING)) {
+            place(timeout, tick + 1);
+        }
+    }
+
+    private void run(Runnable task) {
+        try {
+            if (taskExecutor == null) {
+                task.run();
+            } else {
+                taskExecutor.execute(task);
+            }
+        } catch (Throwable t) {
+            // A failing task must not kill the timer. No further action.
+        }
+    }
+
+    private static long toNanos(String argName, Duration duration) {
+        return noNegativeLong(argName, nonNull(argName, duration).toNanos());
+    }
+
+    private static long saturatedAdd(long a, long b) {
+        final var result = a + b;
+        return ((a ^ result) & (b ^ result)) < 0L ? Long.MAX_VALUE : result;
+    }
+
+    private static long saturatedMultiply(long a, long b) {
+        final var high = Math.multiplyHigh(a, b);
+        final var result = a * b;
+        return (high == 0L && result >= 0L) ? result : Long.MAX_VALUE;
+    }
+
+    private HashedWheelTimer(HashedWheelTimerBuilder builder) {
+        this.tickDurationInNanos = builder.tickDurationInNanos;
+        this.buckets = new Bucket[builder.ticksPerWheel];
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = new Bucket();
+        }
+        this.mask = buckets.length - 1;
+        this.taskExecutor = builder.taskExecutor;
+        this.newTimeouts = new ConcurrentLinkedQueue<>();
+        this.cancelledTimeouts = new ConcurrentLinkedQueue<>();
+        this.pendingTimeoutCount = new AtomicLong();
+        this.workerState = new AtomicInteger(WORKER_INIT);
+        this.worker = ThreadUtils.newDaemonThread(builder.name, this::runWorker);
+        this.unprocessedTasks = List.of();
+        this.startTime = 0L;
+    }
+
+    private final long tickDurationInNanos;
+    private final Bucket[] buckets;
+    private final int mask;
+    private final Executor taskExecutor;
+    private final Queue<WheelTimeout> newTimeouts;
+    private final Queue<WheelTimeout> cancelledTimeouts;
+    private final AtomicLong pendingTimeoutCount;
+    private final AtomicInteger workerState;
+    private final Thread worker;
+    private volatile List<Runnable> unprocessedTasks;
+    private volatile long startTime;
+
+    private static final int WORKER_INIT = 0;
+    private static final int WORKER_STARTED = 1;
+    private static final int WORKER_STOPPED = 2;
+
+    private static final int ST_PENDING = 0;
+    private static final int ST_RUNNING = 1;
+    private static final int ST_EXPIRED = 2;
+    private static final int ST_CANCELLED = 3;
+
+    private static final int MAX_TRANSFERS_PER_TICK = 100_000;
+
+    /**
+     * A handle of a task scheduled in a {@link HashedWheelTimer}.
+     */
+    public interface Timeout {
+
+        /**
+         * Cancels the task. A periodic task which is currently running completes its current run but is not run again.
+         * @return False if the task has already expired (one off tasks) or has already been cancelled.
+         */
+        boolean cancel();
+
+        boolean isCancelled();
+
+        /**
+         * @return True if the (one off) task has been run or handed off to the task executor.
+         */
+        boolean isExpired();
+    }
+
+    private final class WheelTimeout implements Timeout {
+
+        private WheelTimeout(Runnable task, long deadline, long periodInNanos) {
+            this.task = task;
+            this.deadline = deadline;
+            this.periodInNanos = periodInNanos;
+            this.state = ST_PENDING;
+        }
+
+        @Override
+        public boolean cancel() {
+            while (true) {
+                final var current = state;
+                if (current == ST_EXPIRED || current == ST_CANCELLED) {
+                    return false;
+                }
+                if (compareAndSetState(current, ST_CANCELLED)) {
+                    pendingTimeoutCount.decrementAndGet();
+                    cancelledTimeouts.add(this);
+                    return true;
+                }
+            }
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return state == ST_CANCELLED;
+        }
+
+        @Override
+        public boolean isExpired() {
+            return state == ST_EXPIRED;
+        }
+
+        private boolean compareAndSetState(int expected, int newState) {
+            return STATE_UPDATER.compareAndSet(this, expected, newState);
+        }
+
+        private final Runnable task;
+        private final long periodInNanos;
+        private volatile int state;
+
+        // Accessed by the timer thread only
+        private long deadline;
+        private long remainingRounds;
+        private Bucket bucket;
+        private WheelTimeout previous;
+        private WheelTimeout next;
+    }
+
+    private static final AtomicIntegerFieldUpdater<WheelTimeout> STATE_UPDATER =
+            AtomicIntegerFieldUpdater.newUpdater(WheelTimeout.class, "state");
+
+    /**
+     * A doubly linked list of timeouts, accessed by the timer thread only.
+     */
+    private static final class Bucket {
+
+        private void add(WheelTimeout timeout) {
+            timeout.bucket = this;
+            timeout.previous = tail;
+            timeout.next = null;
+            if (tail == null) {
+                head = timeout;
+            } else {
+                tail.next = timeout;
+            }
+            tail = timeout;
+        }
+
+        private void remove(WheelTimeout timeout) {
+            if (timeout.bucket != this) {
+                return;
+            }
+            if (timeout.previous == null) {
+                head = timeout.next;
+            } else {
+                timeout.previous.next = timeout.next;
+            }
+            if (timeout.next == null) {
+                tail = timeout.previous;
+            } else {
+                timeout.next.previous = timeout.previous;
+            }
+            timeout.bucket = null;
+            timeout.previous = null;
+            timeout.next = null;
+        }
+
+        private void drainTo(List<Runnable> tasks) {
+            var timeout = head;
+            while (timeout != null) {
+                final var next = timeout.next;
+                if (!timeout.isCancelled()) {
+                    tasks.add(timeout.task);
+                }
+                remove(timeout);
+                timeout = next;
+            }
+        }
+
+        private WheelTimeout head;
+        private WheelTimeout tail;
+    }
+
+    public static final class HashedWheelTimerBuilder {
+
+        private HashedWheelTimerBuilder(String name) {
+            this.name = name;
+            this.tickDurationInNanos = DEFAULT_TICK_DURATION.toNanos();
+            this.ticksPerWheel = DEFAULT_TICKS_PER_WHEEL;
+            this.taskExecutor = null;
+        }
+
+        /**
+         * The timer's resolution. Default value: 10 millis
+         */
+        public HashedWheelTimerBuilder withTickDuration(Duration tickDuration) {
+            this.tickDurationInNanos = inRange("tickDuration", nonNull("tickDuration", tickDuration).toNanos(),
+                    MIN_TICK_DURATION_IN_NANOS, Long.MAX_VALUE / MAX_TICKS_PER_WHEEL, INCLUSIVE_INCLUSIVE);
+            return this;
+        }
+
+        /**
+         * The number of buckets of the wheel, rounded up to a power of two. Tasks scheduled up to
+         * ticksPerWheel * tickDuration ahead expire on the first revolution. Default value: 512
+         */
+        public HashedWheelTimerBuilder withTicksPerWheel(int ticksPerWheel) {
+            final var ticks = inRange("ticksPerWheel", ticksPerWheel, 1, MAX_TICKS_PER_WHEEL, INCLUSIVE_INCLUSIVE);
+            this.ticksPerWheel = Integer.highestOneBit(ticks) == ticks ? ticks : Integer.highestOneBit(ticks) << 1;
+            return this;
+        }
+
+        /**
+         * Expired tasks are handed off to the given executor instead of running on the timer thread.
+         */
+        public HashedWheelTimerBuilder withTaskExecutor(Executor taskExecutor) {
+            this.taskExecutor = nonNull("taskExecutor", taskExecutor);
+            return this;
+        }
+
+        public HashedWheelTimer build() {
+            return new HashedWheelTimer(this);
+        }
+
+        private final String name;
+        private long tickDurationInNanos;
+        private int ticksPerWheel;
+        private Executor taskExecutor;
+
+        private static final Duration DEFAULT_TICK_DURATION = Duration.ofMillis(10);
+        private static final int DEFAULT_TICKS_PER_WHEEL = 512;
+        private static final int MAX_TICKS_PER_WHEEL = 1 << 30;
+        private static final long MIN_TICK_DURATION_IN_NANOS = 1_000_000L;
+    }
+}
@@ -0,0 +1,20 @@
+package com.brontoblocks.thread;
+
+/**
+ * An executor registered in {@link ThreadPoolRegistry} which is able to report its own metrics.
+ */
+interface InstrumentedExecutor {
+
+    ThreadPoolStats getStats(String poolName);
+
+    /**
+     * @return The fraction (0.0 - 1.0) of the executor's capacity currently in use.
+     */
+    default double getUtilization() {
+        return 0.0;
+    }
+
+    default boolean isUnderBackPressure() {
+        return false;
+    }
+}
@@ -0,0 +1,120 @@
+package com.brontoblocks.thread;
+
+import com.brontoblocks.utils.LatencyHistogram;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A {@link ForkJoinPool} which exposes its state as {@link ThreadPoolStats}. Runnables and Callables submitted to the
+ * pool (execute, submit and invokeAll) are wrapped so that their completions are counted. ForkJoinTasks (including
+ * the async tasks of CompletableFuture) are submitted as they are, since their completion cannot be observed without
+ * running them inside another task, hence they are not counted. Neither are subtasks, which are forked directly into
+ * the worker queues. Queue wait and execution times are not recorded (the histograms are always empty). Steals, which
+ * are what matters when tuning a work stealing pool, are reported separately.
+ */
+final class InstrumentedForkJoinPool extends ForkJoinPool implements InstrumentedExecutor {
+
+    static InstrumentedForkJoinPool create(String namePrefix, int parallelism, boolean asyncMode) {
+        return new InstrumentedForkJoinPool(namePrefix, parallelism, asyncMode, new AtomicInteger());
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        if (task instanceof ForkJoinTask<?> forkJoinTask) {
+            super.execute(forkJoinTask);
+        } else {
+            super.execute(counting(task));
+        }
+    }
+
+    @Override
+    public <T> ForkJoinTask<T> submit(Callable<T> task) {
+        return super.submit(counting(task));
+    }
+
+    @Override
+    public <T> ForkJoinTask<T> submit(Runnable task, T result) {
+        return super.submit(counting(task), result);
+    }
+
+    @Override
+    public ForkJoinTask<?> submit(Runnable task) {
+        return task instanceof ForkJoinTask<?> ? super.submit(task) : super.submit(counting(task));
+    }
+
+    @Override
+    public <T> List<Future<T>> invokeAll(Collection<? extends Callable<T>> tasks) {
+        return super.invokeAll(tasks.stream().map(this::counting).toList());
+    }
+
+    /**
+     * Utilization is measured as the number of workers running (not stolen or blocked) tasks over the parallelism.
+     */
+    @Override
+    public double getUtilization() {
+        return Math.min(1.0, (double) getActiveThreadCount() / getParallelism());
+    }
+
+    @Override
+    public ThreadPoolStats getStats(String poolName) {
+        return new ThreadPoolStats(
+                poolName,
+                getPoolSize(),
+                getActiveThreadCount(),
+                largestPoolSize.get(),
+                getParallelism(),
+                (int) Math.min(Integer.MAX_VALUE, getQueuedSubmissionCount() + getQueuedTaskCount()),
+                completedTaskCount.sum(),
+                0L,
+                getStealCount(),
+                EMPTY.snapshot(),
+                EMPTY.snapshot());
+    }
+
+    private InstrumentedForkJoinPool(String namePrefix, int parallelism, boolean asyncMode,
+                                     AtomicInteger largestPoolSize) {
+        super(parallelism, pool -> {
+            final var thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            thread.setName(namePrefix + largestPoolSize.incrementAndGet());
+            return thread;
+        }, null, asyncMode);
+        this.largestPoolSize = largestPoolSize;
+        this.completedTaskCount = new LongAdder();
+    }
+
+    private Runnable counting(Runnable task) {
+        return () -> {
+            try {
+                task.run();
+            } finally {
+                completedTaskCount.increment();
+            }
+        };
+    }
+
+    private <T> Callable<T> counting(Callable<T> task) {
+        return () -> {
+            try {
+                return task.call();
+            } finally {
+                completedTaskCount.increment();
+            }
+        };
+    }
+
+    /**
+     * Workers are created only to reach the parallelism (or to compensate for blocked ones), hence the number of
+     * workers ever created is an upper bound of the largest pool size.
+     */
+    private final AtomicInteger largestPoolSize;
+    private final LongAdder completedTaskCount;
+
+    private static final LatencyHistogram EMPTY = LatencyHistogram.create();
+}
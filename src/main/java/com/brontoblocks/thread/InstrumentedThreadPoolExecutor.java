@@ -0,0 +1,202 @@
+package com.brontoblocks.thread;
+
+import com.brontoblocks.thread.RejectionPolicies.BlockWithTimeoutPolicy;
+import com.brontoblocks.utils.LatencyHistogram;
+
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.ThreadPoolExecutor.CallerRunsPolicy;
+import java.util.concurrent.ThreadPoolExecutor.DiscardOldestPolicy;
+import java.util.concurrent.ThreadPoolExecutor.DiscardPolicy;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A {@link ThreadPoolExecutor} which records how long tasks wait in the queue, how long they run and how many of them
+ * get rejected. Recording costs two clock reads per task plus a few uncontended atomic increments.
+ *
+ * Tasks are queued wrapped along with their enqueue time. The wrapping is invisible to callers: rejection handlers,
+ * {@link #shutdownNow()}, {@link #remove(Runnable)} and {@link #purge()} all deal with the submitted tasks.
+ *
+ * Queues which do not support removing arbitrary elements ({@link MpmcArrayBlockingQueue}) are left untouched by
+ * {@link #remove(Runnable)}, which returns false, and {@link #purge()}, which has no effect. Cancelled tasks queued in
+ * them are discarded once a thread picks them up.
+ *
+ * A task counts as rejected when the rejection policy throws or discards a task. Tasks the policy runs in the
+ * submitter's thread, or queues after waiting for space, are not rejections and the latter keep their timings.
+ */
+class InstrumentedThreadPoolExecutor extends ThreadPoolExecutor implements InstrumentedExecutor {
+
+    static InstrumentedThreadPoolExecutor create(int corePoolSize, int maximumPoolSize, long keepAliveTime,
+                                                 TimeUnit unit, BlockingQueue<Runnable> workQueue,
+                                                 ThreadFactory threadFactory, RejectedExecutionHandler handler,
+                                                 double backPressureThreshold) {
+        return new InstrumentedThreadPoolExecutor(corePoolSize, maximumPoolSize, keepAliveTime, unit, workQueue,
+                threadFactory, handler, backPressureThreshold, new LongAdder());
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        super.execute(command instanceof TimedTask ? command : new TimedTask(command));
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+        final var pendingTasks = super.shutdownNow();
+        pendingTasks.replaceAll(InstrumentedThreadPoolExecutor::unwrap);
+        return pendingTasks;
+    }
+
+    @Override
+    public boolean remove(Runnable task) {
+        if (!supportsRemoval()) {
+            return false;
+        }
+
+        for (var queuedTask : getQueue()) {
+            if (unwrap(queuedTask) == task) {
+                return super.remove(queuedTask);
+            }
+        }
+        return super.remove(task);
+    }
+
+    @Override
+    public void purge() {
+        if (!supportsRemoval()) {
+            return;
+        }
+
+        getQueue().removeIf(queuedTask -> unwrap(queuedTask) instanceof Future<?> future && future.isCancelled());
+        super.purge();
+    }
+
+    @Override
+    protected void beforeExecute(Thread t, Runnable r) {
+        super.beforeExecute(t, r);
+        if (r instanceof TimedTask timedTask) {
+            timedTask.startedAtNanos = System.nanoTime();
+            queueWaitTime.record(timedTask.startedAtNanos - timedTask.enqueuedAtNanos);
+        }
+    }
+
+    @Override
+    protected void afterExecute(Runnable r, Throwable t) {
+        if (r instanceof TimedTask timedTask) {
+            executionTime.record(System.nanoTime() - timedTask.startedAtNanos);
+        }
+        super.afterExecute(r, t);
+    }
+
+    /**
+     * Sets both the core and the max pool size to the given size. Excess threads are released once they become idle.
+     */
+    void resize(int poolSize) {
+        if (poolSize > getMaximumPoolSize()) {
+            setMaximumPoolSize(poolSize);
+            setCorePoolSize(poolSize);
+        } else if (poolSize < getCorePoolSize()) {
+            setCorePoolSize(poolSize);
+            setMaximumPoolSize(poolSize);
+        }
+    }
+
+    /**
+     * Utilization is measured as the number of busy threads plus queued tasks over the max number of threads plus the
+     * queue capacity. For a pool without a queue this equals to busy threads over max threads.
+     */
+    @Override
+    public double getUtilization() {
+        final var queue = getQueue();
+        final var queueSize = queue.size();
+        final var capacity = (double) getMaximumPoolSize() + queueSize + queue.remainingCapacity();
+        return Math.min(1.0, (getActiveCount() + queueSize) / capacity);
+    }
+
+    @Override
+    public boolean isUnderBackPressure() {
+        return getUtilization() >= backPressureThreshold;
+    }
+
+    @Override
+    public ThreadPoolStats getStats(String poolName) {
+        return new ThreadPoolStats(
+                poolName,
+                getPoolSize(),
+                getActiveCount(),
+                getLargestPoolSize(),
+                getMaximumPoolSize(),
+                getQueue().size(),
+                getCompletedTaskCount(),
+                rejectedTaskCount.sum(),
+                queueWaitTime.snapshot(),
+                executionTime.snapshot());
+    }
+
+    private InstrumentedThreadPoolExecutor(int corePoolSize, int maximumPoolSize, long keepAliveTime, TimeUnit unit,
+                                           BlockingQueue<Runnable> workQueue, ThreadFactory threadFactory,
+                                           RejectedExecutionHandler handler, double backPressureThreshold,
+                                           LongAdder rejectedTaskCount) {
+        super(corePoolSize, maximumPoolSize, keepAliveTime, unit, workQueue, threadFactory, (r, executor) -> {
+            try {
+                // A policy which queues the task itself must queue it wrapped, otherwise its timings are lost
+                handler.rejectedExecution(handler instanceof BlockWithTimeoutPolicy ? r : unwrap(r), executor);
+            } catch (RuntimeException ex) {
+                rejectedTaskCount.increment();
+                throw ex;
+            }
+
+            if (isDiscarding(handler, executor)) {
+                rejectedTaskCount.increment();
+            }
+        });
+        this.rejectedTaskCount = rejectedTaskCount;
+        this.backPressureThreshold = backPressureThreshold;
+        this.queueWaitTime = LatencyHistogram.create();
+        this.executionTime = LatencyHistogram.create();
+    }
+
+    /**
+     * @return True if the given policy has just discarded a task (the rejected one or, for DiscardOldestPolicy, the
+     * oldest queued one) without throwing.
+     */
+    private static boolean isDiscarding(RejectedExecutionHandler handler, ThreadPoolExecutor executor) {
+        return handler instanceof DiscardPolicy
+                || handler instanceof DiscardOldestPolicy
+                || (handler instanceof CallerRunsPolicy && executor.isShutdown());
+    }
+
+    private boolean supportsRemoval() {
+        return !(getQueue() instanceof MpmcArrayBlockingQueue);
+    }
+
+    private static Runnable unwrap(Runnable task) {
+        return task instanceof TimedTask timedTask ? timedTask.delegate : task;
+    }
+
+    private final LongAdder rejectedTaskCount;
+    private final double backPressureThreshold;
+    private final LatencyHistogram queueWaitTime;
+    private final LatencyHistogram executionTime;
+
+    private static final class TimedTask implements Runnable {
+
+        private TimedTask(Runnable delegate) {
+            this.delegate = delegate;
+            this.enqueuedAtNanos = System.nanoTime();
+        }
+
+        @Override
+        public void run() {
+            delegate.run();
+        }
+
+        private final Runnable delegate;
+        private final long enqueuedAtNanos;
+        private long startedAtNanos;
+    }
+}
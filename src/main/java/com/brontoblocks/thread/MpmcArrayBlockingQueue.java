@@ -0,0 +1,283 @@
+package com.brontoblocks.thread;
+
+import java.util.AbstractQueue;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static com.brontoblocks.utils.ArgCheck.RangeArgCheckMode.INCLUSIVE_INCLUSIVE;
+import static com.brontoblocks.utils.ArgCheck.inRange;
+import static com.brontoblocks.utils.ArgCheck.nonNull;
+
+/**
+ * A bounded, multi-producer multi-consumer queue based on D. Vyukov's array queue. Non-blocking operations
+ * (offer/poll) are lock free: every slot carries a sequence number which tells producers and consumers whether the
+ * slot is ready for them, so they only ever compete on a single CAS.
+ *
+ * Blocking operations first try the lock free path and only when they need to wait they fall back to a lock and a
+ * condition. The lock is touched by the non-blocking side only when some thread is actually waiting, hence a busy
+ * queue never contends on it.
+ *
+ * Optionally, blocked threads can wait according to a {@link WaitStrategy} (e.g. spinning) instead of parking on the
+ * condition, for the lowest hand-off latency between producers and consumers.
+ *
+ * Removing arbitrary elements is not supported: {@link #remove(Object)} always returns false and the iterator is a
+ * weakly consistent snapshot which does not support removal.
+ */
+final class MpmcArrayBlockingQueue<E> extends AbstractQueue<E> implements BlockingQueue<E> {
+
+    MpmcArrayBlockingQueue(int capacity) {
+        this(capacity, null);
+    }
+
+    MpmcArrayBlockingQueue(int capacity, WaitStrategy waitStrategy) {
+        this.waitStrategy = waitStrategy;
+        this.capacity = inRange("capacity", capacity, 1, Integer.MAX_VALUE, INCLUSIVE_INCLUSIVE);
+        this.items = new AtomicReferenceArray<>(capacity);
+        this.sequences = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++) {
+            sequences.set(i, i);
+        }
+        this.enqueuePosition = new AtomicLong();
+        this.dequeuePosition = new AtomicLong();
+        this.lock = new ReentrantLock();
+        this.notEmpty = lock.newCondition();
+        this.notFull = lock.newCondition();
+        this.waitingConsumers = new AtomicInteger();
+        this.waitingProducers = new AtomicInteger();
+    }
+
+    @Override
+    public boolean offer(E e) {
+        nonNull("e", e);
+
+        var position = enqueuePosition.get();
+        int index;
+        while (true) {
+            index = (int) (position % capacity);
+            final var difference = sequences.get(index) - position;
+
+            if (difference == 0L) {
+                if (enqueuePosition.compareAndSet(position, position + 1)) {
+                    break;
+                }
+                position = enqueuePosition.get();
+            } else if (difference < 0L) {
+                return false;
+            } else {
+                position = enqueuePosition.get();
+            }
+        }
+
+        items.set(index, e);
+        sequences.set(index, position + 1);
+        signalIfWaiting(waitingConsumers, notEmpty);
+        return true;
+    }
+
+    @Override
+    public E poll() {
+        var position = dequeuePosition.get();
+        int index;
+        while (true) {
+            index = (int) (position % capacity);
+            final var difference = sequences.get(index) - (position + 1);
+
+            if (difference == 0L) {
+                if (dequeuePosition.compareAndSet(position, position + 1)) {
+                    break;
+                }
+                position = dequeuePosition.get();
+            } else if (difference < 0L) {
+                return null;
+            } else {
+                position = dequeuePosition.get();
+            }
+        }
+
+        final var e = items.get(index);
+        items.set(index, null);
+        sequences.set(index, position + capacity);
+        signalIfWaiting(waitingProducers, notFull);
+        return e;
+    }
+
+    @Override
+    public E peek() {
+        final var position = dequeuePosition.get();
+        return items.get((int) (position % capacity));
+    }
+
+    @Override
+    public void put(E e) throws InterruptedException {
+        offer(e, Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public boolean offer(E e, long timeout, TimeUnit unit) throws InterruptedException {
+        if (offer(e)) {
+            return true;
+        }
+
+        if (waitStrategy != null) {
+            final var deadline = System.nanoTime() + unit.toNanos(timeout);
+            for (int idleCount = 0; !offer(e); idleCount++) {
+                if (awaitWithStrategy(deadline, idleCount)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        var remaining = unit.toNanos(timeout);
+        lock.lockInterruptibly();
+        waitingProducers.incrementAndGet();
+        try {
+            while (!offer(e)) {
+                if (remaining <= 0L) {
+                    return false;
+                }
+                remaining = notFull.awaitNanos(remaining);
+            }
+            return true;
+        } finally {
+            waitingProducers.decrementAndGet();
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public E take() throws InterruptedException {
+        E e;
+        while ((e = poll(Long.MAX_VALUE, TimeUnit.NANOSECONDS)) == null) {
+            // Long.MAX_VALUE nanos (~292 years) elapsed. Keep waiting.
+        }
+        return e;
+    }
+
+    @Override
+    public E poll(long timeout, TimeUnit unit) throws InterruptedException {
+        var e = poll();
+        if (e != null) {
+            return e;
+        }
+
+        if (waitStrategy != null) {
+            final var deadline = System.nanoTime() + unit.toNanos(timeout);
+            for (int idleCount = 0; (e = poll()) == null; idleCount++) {
+                if (awaitWithStrategy(deadline, idleCount)) {
+                    return null;
+                }
+            }
+            return e;
+        }
+
+        var remaining = unit.toNanos(timeout);
+        lock.lockInterruptibly();
+        waitingConsumers.incrementAndGet();
+        try {
+            while ((e = poll()) == null) {
+                if (remaining <= 0L) {
+                    return null;
+                }
+                remaining = notEmpty.awaitNanos(remaining);
+            }
+            return e;
+        } finally {
+            waitingConsumers.decrementAndGet();
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int size() {
+        final var size = enqueuePosition.get() - dequeuePosition.get();
+        return (int) Math.max(0L, Math.min(capacity, size));
+    }
+
+    @Override
+    public int remainingCapacity() {
+        return capacity - size();
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        return false;
+    }
+
+    @Override
+    public int drainTo(Collection<? super E> c) {
+        return drainTo(c, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public int drainTo(Collection<? super E> c, int maxElements) {
+        var drained = 0;
+        E e;
+        while (drained < maxElements && (e = poll()) != null) {
+            c.add(e);
+            drained++;
+        }
+        return drained;
+    }
+
+    @Override
+    public Iterator<E> iterator() {
+        final var snapshot = new ArrayList<E>(size());
+        final var from = dequeuePosition.get();
+        final var to = enqueuePosition.get();
+        for (var position = from; position < to && position < from + capacity; position++) {
+            final var e = items.get((int) (position % capacity));
+            if (e != null) {
+                snapshot.add(e);
+            }
+        }
+        return Collections.unmodifiableList(snapshot).iterator();
+    }
+
+    /**
+     * @return True if the deadline has passed.
+     */
+    private boolean awaitWithStrategy(long deadline, int idleCount) throws InterruptedException {
+        if (Thread.interrupted()) {
+            throw new InterruptedException();
+        }
+        if (deadline - System.nanoTime() <= 0L) {
+            return true;
+        }
+        waitStrategy.idle(Math.max(0, idleCount));
+        return false;
+    }
+
+    private void signalIfWaiting(AtomicInteger waiting, Condition condition) {
+        if (waiting.get() > 0) {
+            lock.lock();
+            try {
+                condition.signal();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private final WaitStrategy waitStrategy;
+    private final int capacity;
+    private final AtomicReferenceArray<E> items;
+    private final AtomicLongArray sequences;
+    private final AtomicLong enqueuePosition;
+    private final AtomicLong dequeuePosition;
+    private final ReentrantLock lock;
+    private final Condition notEmpty;
+    private final Condition notFull;
+    private final AtomicInteger waitingConsumers;
+    private final AtomicInteger waitingProducers;
+}
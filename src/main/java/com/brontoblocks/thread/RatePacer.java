@@ -0,0 +1,179 @@
+package com.brontoblocks.thread;
+
+import java.time.Duration;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static com.brontoblocks.utils.ArgCheck.noNegativeLong;
+import static com.brontoblocks.utils.ArgCheck.nonNull;
+
+/**
+ * Paces work at a target rate, e.g. the requests of a load generator or the events of a replay tool.
+ *
+ * Every call to acquire() is given a slot on a fixed schedule: the n-th slot starts at start + n / rate. As the slots
+ * are computed from the start of the schedule rather than from the previous call, time spent by the caller between
+ * calls, and any oversleeping, does not accumulate into drift. Waiting uses
+ * {@link ThreadUtils#sleepUntilNanoTime(long, long)}, hence slots are hit with an accuracy of a few micros.
+ *
+ * When the caller falls behind schedule (e.g. the system under test stalls), the missed slots are by default issued
+ * immediately one after the other, so that the average rate is kept and the stall is not hidden from latency
+ * measurements (coordinated omission). Alternatively, with withoutCatchUp(), missed slots are skipped and the schedule
+ * restarts from the current time.
+ *
+ * Usage example
+ * <pre>
+ *   var pacer = RatePacer.builder(5_000.0).build();
+ *   while (isRunning) {
+ *       final var intendedStart = pacer.acquire();
+ *       sendRequest();
+ *       latencies.record(System.nanoTime() - intendedStart);
+ *   }
+ * </pre>
+ *
+ * This class IS thread safe: multiple threads may acquire slots from the same pacer, each slot is given to one of them.
+ */
+public final class RatePacer {
+
+    /**
+     * @param eventsPerSecond The target rate.
+     */
+    public static RatePacerBuilder builder(double eventsPerSecond) {
+        return new RatePacerBuilder(checkRate(eventsPerSecond));
+    }
+
+    /**
+     * Waits for the next slot.
+     * @return The time (in {@link System#nanoTime()} terms) the slot was scheduled for, which is the intended start of
+     * the work. It may be in the past if the caller is behind schedule.
+     * @throws InterruptedException if the thread is interrupted while waiting.
+     */
+    public long acquire() throws InterruptedException {
+        final long slot;
+        lock.lock();
+        try {
+            if (scheduleStart == UNSTARTED) {
+                scheduleStart = System.nanoTime();
+            }
+
+            var candidate = slotAt(slotIndex);
+            if (!isCatchingUp) {
+                final var now = System.nanoTime();
+                if (now - candidate > intervalInNanos) {
+                    restartScheduleAt(now);
+                    candidate = now;
+                }
+            }
+
+            slot = candidate;
+            slotIndex++;
+        } finally {
+            lock.unlock();
+        }
+
+        ThreadUtils.sleepUntilNanoTime(slot, spinThresholdInNanos);
+        return slot;
+    }
+
+    /**
+     * Changes the target rate. The schedule restarts from the next slot, hence the new rate applies from then on.
+     */
+    public void setRate(double eventsPerSecond) {
+        final var newIntervalInNanos = NANOS_PER_SECOND / checkRate(eventsPerSecond);
+
+        lock.lock();
+        try {
+            if (scheduleStart != UNSTARTED) {
+                restartScheduleAt(slotAt(slotIndex));
+            }
+            intervalInNanos = newIntervalInNanos;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public double getRate() {
+        return NANOS_PER_SECOND / intervalInNanos;
+    }
+
+    /**
+     * @return How far behind schedule (in nanos) the next slot is, zero if the next slot is in the future.
+     */
+    public long getLagInNanos() {
+        lock.lock();
+        try {
+            return scheduleStart == UNSTARTED ? 0L : Math.max(0L, System.nanoTime() - slotAt(slotIndex));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private long slotAt(long index) {
+        // Computed from the start of the schedule (instead of adding the interval up) to avoid rounding drift
+        return scheduleStart + Math.round(index * intervalInNanos);
+    }
+
+    private void restartScheduleAt(long nanoTime) {
+        scheduleStart = nanoTime;
+        slotIndex = 0L;
+    }
+
+    private static double checkRate(double eventsPerSecond) {
+        if (!(eventsPerSecond > 0.0 && eventsPerSecond <= NANOS_PER_SECOND)) {
+            throw new IllegalArgumentException("Argument:eventsPerSecond invalid. Failed 'in-range' check.");
+        }
+        return eventsPerSecond;
+    }
+
+    private RatePacer(RatePacerBuilder builder) {
+        this.lock = new ReentrantLock();
+        this.intervalInNanos = NANOS_PER_SECOND / builder.eventsPerSecond;
+        this.isCatchingUp = builder.isCatchingUp;
+        this.spinThresholdInNanos = builder.spinThresholdInNanos;
+        this.scheduleStart = UNSTARTED;
+        this.slotIndex = 0L;
+    }
+
+    private final ReentrantLock lock;
+    private final boolean isCatchingUp;
+    private final long spinThresholdInNanos;
+    private volatile double intervalInNanos;
+    private long scheduleStart;
+    private long slotIndex;
+
+    private static final double NANOS_PER_SECOND = 1_000_000_000.0;
+    private static final long UNSTARTED = Long.MIN_VALUE;
+
+    public static final class RatePacerBuilder {
+
+        private RatePacerBuilder(double eventsPerSecond) {
+            this.eventsPerSecond = eventsPerSecond;
+            this.isCatchingUp = true;
+            this.spinThresholdInNanos = ThreadUtils.DEFAULT_SPIN_THRESHOLD_IN_NANOS;
+        }
+
+        /**
+         * Skips the slots missed while the caller was behind schedule, instead of issuing them back to back.
+         */
+        public RatePacerBuilder withoutCatchUp() {
+            this.isCatchingUp = false;
+            return this;
+        }
+
+        /**
+         * How long before a slot the waiting thread stops parking and starts spinning. Default value: 100 micros.
+         * Zero disables spinning.
+         */
+        public RatePacerBuilder withSpinThreshold(Duration spinThreshold) {
+            this.spinThresholdInNanos = noNegativeLong("spinThreshold",
+                    nonNull("spinThreshold", spinThreshold).toNanos());
+            return this;
+        }
+
+        public RatePacer build() {
+            return new RatePacer(this);
+        }
+
+        private final double eventsPerSecond;
+        private boolean isCatchingUp;
+        private long spinThresholdInNanos;
+    }
+}
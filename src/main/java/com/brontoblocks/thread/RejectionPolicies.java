@@ -0,0 +1,82 @@
+package com.brontoblocks.thread;
+
+import java.time.Duration;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+
+import static com.brontoblocks.utils.ArgCheck.noNegativeLong;
+import static com.brontoblocks.utils.ArgCheck.nonNull;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+/**
+ * The policies a {@link ThreadPoolSpec} can apply once its pool is saturated (all threads busy and queue full).
+ */
+public final class RejectionPolicies {
+
+    /**
+     * Throws {@link RejectedExecutionException}. This is the default policy.
+     */
+    public static RejectedExecutionHandler abort() {
+        return new ThreadPoolExecutor.AbortPolicy();
+    }
+
+    /**
+     * Runs the task in the submitter's thread. This naturally throttles submitters to the pace of the pool.
+     */
+    public static RejectedExecutionHandler callerRuns() {
+        return new ThreadPoolExecutor.CallerRunsPolicy();
+    }
+
+    /**
+     * Discards the oldest queued task to make room for the new one. Suitable when only the latest work matters
+     * (e.g. price updates).
+     */
+    public static RejectedExecutionHandler dropOldest() {
+        return new ThreadPoolExecutor.DiscardOldestPolicy();
+    }
+
+    /**
+     * Blocks the submitter for up to the given timeout, waiting for space in the queue. If the queue is still full
+     * after the timeout a {@link RejectedExecutionException} is thrown.
+     */
+    public static RejectedExecutionHandler blockWithTimeout(Duration timeout) {
+        final var timeoutInNanos = noNegativeLong("timeout", nonNull("timeout", timeout).toNanos());
+        return new BlockWithTimeoutPolicy(timeout, timeoutInNanos);
+    }
+
+    private RejectionPolicies() {
+    }
+
+    /**
+     * Puts the task in the queue itself, hence {@link InstrumentedThreadPoolExecutor} hands it the task exactly as it
+     * would have been queued (i.e. along with its enqueue time) rather than the submitted one.
+     */
+    static final class BlockWithTimeoutPolicy implements RejectedExecutionHandler {
+
+        @Override
+        public void rejectedExecution(Runnable task, ThreadPoolExecutor executor) {
+            if (executor.isShutdown()) {
+                throw new RejectedExecutionException("Executor has been shut down");
+            }
+
+            try {
+                if (!executor.getQueue().offer(task, timeoutInNanos, NANOSECONDS)) {
+                    throw new RejectedExecutionException("Timed out waiting for queue space after %s"
+                            .formatted(timeout));
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new RejectedExecutionException("Interrupted while waiting for queue space", ex);
+            }
+        }
+
+        private BlockWithTimeoutPolicy(Duration timeout, long timeoutInNanos) {
+            this.timeout = timeout;
+            this.timeoutInNanos = timeoutInNanos;
+        }
+
+        private final Duration timeout;
+        private final long timeoutInNanos;
+    }
+}
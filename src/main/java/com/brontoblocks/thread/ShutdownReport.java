@@ -0,0 +1,28 @@
+package com.brontoblocks.thread;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * The outcome of shutting down the pools of a {@link ThreadPoolRegistry}, in the order the pools were shut down.
+ * @param pools The outcome per pool.
+ * @param totalTime The wall clock time of the whole shutdown.
+ */
+public record ShutdownReport(List<PoolTermination> pools, Duration totalTime) {
+
+    /**
+     * @return True if every pool drained its tasks within its drain timeout.
+     */
+    public boolean isClean() {
+        return pools.stream().allMatch(PoolTermination::isTerminated);
+    }
+
+    /**
+     * @param poolName The name of the pool.
+     * @param isTerminated True if the pool completed all of its tasks within the drain timeout. Otherwise, the running
+     *                     tasks were interrupted and the queued ones were dropped.
+     * @param drainTime The time spent waiting for the pool to drain.
+     * @param droppedTaskCount The number of queued tasks that never ran.
+     */
+    public record PoolTermination(String poolName, boolean isTerminated, Duration drainTime, int droppedTaskCount) { }
+}
@@ -0,0 +1,221 @@
+package com.brontoblocks.thread;
+
+import com.brontoblocks.utils.LatencyHistogram;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * An executor which starts a new thread for every task. It is meant to be used with virtual threads for blocking I/O
+ * workloads, where tasks are cheap to start and can be in the tens of thousands.
+ *
+ * Optionally, the number of tasks running concurrently can be limited (bulkhead). Tasks beyond the limit are queued,
+ * without a thread, and each of them gets its own thread once a running task completes. Hence, submitters are never
+ * blocked and the limit bounds the number of threads as well. Waiting in the queue is reported as queue wait time.
+ */
+final class ThreadPerTaskExecutor extends AbstractExecutorService implements InstrumentedExecutor {
+
+    static ThreadPerTaskExecutor create(ThreadFactory threadFactory, int maxConcurrency) {
+        return new ThreadPerTaskExecutor(threadFactory, maxConcurrency);
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        final var task = new PendingTask(command, System.nanoTime());
+
+        lock.lock();
+        try {
+            // Checked and registered under the same lock, so that no task slips in after termination
+            if (isShutdown) {
+                rejectedTaskCount.increment();
+                throw new RejectedExecutionException("Executor has been shut down");
+            }
+
+            if (threads.size() < maxConcurrency) {
+                startThread(task);
+            } else {
+                pendingTasks.add(task);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void shutdown() {
+        lock.lock();
+        try {
+            isShutdown = true;
+            if (isTerminated()) {
+                terminated.signalAll();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+        lock.lock();
+        try {
+            isShutdown = true;
+            final var neverStarted = new ArrayList<Runnable>(pendingTasks.size());
+            pendingTasks.forEach(task -> neverStarted.add(task.command()));
+            pendingTasks.clear();
+
+            threads.forEach(Thread::interrupt);
+            if (isTerminated()) {
+                terminated.signalAll();
+            }
+            return neverStarted;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return isShutdown;
+    }
+
+    @Override
+    public boolean isTerminated() {
+        lock.lock();
+        try {
+            return isShutdown && threads.isEmpty() && pendingTasks.isEmpty();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        var remaining = unit.toNanos(timeout);
+        lock.lock();
+        try {
+            while (!isTerminated()) {
+                if (remaining <= 0L) {
+                    return false;
+                }
+                remaining = terminated.awaitNanos(remaining);
+            }
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public ThreadPoolStats getStats(String poolName) {
+        final int poolSize;
+        final int queueSize;
+        lock.lock();
+        try {
+            poolSize = threads.size();
+            queueSize = pendingTasks.size();
+        } finally {
+            lock.unlock();
+        }
+
+        return new ThreadPoolStats(
+                poolName,
+                poolSize,
+                runningTaskCount.get(),
+                largestPoolSize.get(),
+                maxConcurrency,
+                queueSize,
+                completedTaskCount.sum(),
+                rejectedTaskCount.sum(),
+                queueWaitTime.snapshot(),
+                executionTime.snapshot());
+    }
+
+    /**
+     * Must be called while holding the lock.
+     */
+    private void startThread(PendingTask task) {
+        final var thread = threadFactory.newThread(() -> runTask(task));
+        threads.add(thread);
+        largestPoolSize.accumulateAndGet(threads.size(), Math::max);
+        thread.start();
+    }
+
+    private void runTask(PendingTask task) {
+        try {
+            final var startedAt = System.nanoTime();
+            queueWaitTime.record(startedAt - task.enqueuedAt());
+            runningTaskCount.incrementAndGet();
+            try {
+                task.command().run();
+            } finally {
+                runningTaskCount.decrementAndGet();
+                executionTime.record(System.nanoTime() - startedAt);
+                completedTaskCount.increment();
+            }
+        } finally {
+            onTaskCompleted();
+        }
+    }
+
+    private void onTaskCompleted() {
+        lock.lock();
+        try {
+            threads.remove(Thread.currentThread());
+
+            // The completed task hands its slot over to the next pending one
+            final var next = pendingTasks.poll();
+            if (next != null) {
+                startThread(next);
+            } else if (isTerminated()) {
+                terminated.signalAll();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private ThreadPerTaskExecutor(ThreadFactory threadFactory, int maxConcurrency) {
+        this.threadFactory = threadFactory;
+        this.maxConcurrency = maxConcurrency;
+        this.pendingTasks = new ArrayDeque<>();
+        this.threads = new HashSet<>();
+        this.lock = new ReentrantLock();
+        this.terminated = lock.newCondition();
+        this.runningTaskCount = new AtomicInteger();
+        this.largestPoolSize = new AtomicInteger();
+        this.completedTaskCount = new LongAdder();
+        this.rejectedTaskCount = new LongAdder();
+        this.queueWaitTime = LatencyHistogram.create();
+        this.executionTime = LatencyHistogram.create();
+        this.isShutdown = false;
+    }
+
+    private final ThreadFactory threadFactory;
+    private final int maxConcurrency;
+    // Both guarded by the lock
+    private final Queue<PendingTask> pendingTasks;
+    private final Set<Thread> threads;
+    private final ReentrantLock lock;
+    private final Condition terminated;
+    private final AtomicInteger runningTaskCount;
+    private final AtomicInteger largestPoolSize;
+    private final LongAdder completedTaskCount;
+    private final LongAdder rejectedTaskCount;
+    private final LatencyHistogram queueWaitTime;
+    private final LatencyHistogram executionTime;
+    private volatile boolean isShutdown;
+
+    private record PendingTask(Runnable command, long enqueuedAt) {}
+}
@@ -1,19 +1,43 @@
 package com.brontoblocks.thread;
 
+import javax.management.JMException;
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.OptionalDouble;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.SynchronousQueue;
-import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
 
+import static com.brontoblocks.utils.ArgCheck.RangeArgCheckMode.INCLUSIVE_INCLUSIVE;
+import static com.brontoblocks.utils.ArgCheck.inRange;
 import static com.brontoblocks.utils.ArgCheck.noNegativeInt;
+import static com.brontoblocks.utils.ArgCheck.noNegativeLong;
+import static com.brontoblocks.utils.ArgCheck.nonNull;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
 import static java.util.concurrent.TimeUnit.SECONDS;
 
 public class ThreadPoolRegistry<THREAD_POOL_NAMES extends Enum<THREAD_POOL_NAMES>> {
 
     public ThreadPoolRegistry() {
         this.threadPools = new ConcurrentHashMap<>();
+        this.registrationOrder = new ArrayList<>();
+        this.isJmxExportEnabled = false;
+        this.shutdownHook = null;
     }
 
     public int getSystemCoreCount() {
@@ -29,19 +53,364 @@ public class ThreadPoolRegistry<THREAD_POOL_NAMES extends Enum<THREAD_POOL_NAMES
     }
 
     public void storeThreadPool(THREAD_POOL_NAMES threadPoolName, int minThreadPoolSize, int maxThreadPoolSize, int threadLifeTimeInSeconds) {
-        var minSize = noNegativeInt("minThreadPoolSize", minThreadPoolSize);
-        var maxSize = noNegativeInt("maxThreadPoolSize", maxThreadPoolSize);
+        var lifeTime = noNegativeInt("threadLifeTimeInSeconds", threadLifeTimeInSeconds);
 
-        var threadPool = new ThreadPoolExecutor(minSize, maxSize, 20L, SECONDS, new SynchronousQueue<>());
+        storeThreadPool(threadPoolName, ThreadPoolSpec.builder(minThreadPoolSize, maxThreadPoolSize)
+                .withThreadLifeTime(Duration.ofSeconds(lifeTime))
+                .build());
+    }
+
+    public void storeThreadPool(THREAD_POOL_NAMES threadPoolName, ThreadPoolSpec threadPoolSpec) {
+        register(threadPoolName, nonNull("threadPoolSpec", threadPoolSpec).createExecutor(namedThreadFactory(threadPoolName)));
+    }
+
+    /**
+     * Registers a {@link ScheduledExecutorService} for delayed and periodic tasks. Cancelled tasks are removed from the
+     * queue right away. For a large number of timeouts (e.g. request deadlines) prefer a {@link HashedWheelTimer}.
+     */
+    public void storeScheduledThreadPool(THREAD_POOL_NAMES threadPoolName, int threadPoolSize) {
+        var poolSize = inRange("threadPoolSize", threadPoolSize, 1, Integer.MAX_VALUE, INCLUSIVE_INCLUSIVE);
+
+        var threadPool = new ScheduledThreadPoolExecutor(poolSize, namedThreadFactory(threadPoolName));
+        threadPool.setRemoveOnCancelPolicy(true);
+
+        register(threadPoolName, threadPool);
+    }
+
+    public Optional<ScheduledExecutorService> requestScheduledThreadPool(THREAD_POOL_NAMES threadPoolName) {
+        return requestThreadPool(threadPoolName)
+                .filter(ScheduledExecutorService.class::isInstance)
+                .map(ScheduledExecutorService.class::cast);
+    }
+
+    /**
+     * Registers a pool whose size is adjusted periodically, within the sizer's bounds, to the observed load. Tasks that
+     * find every thread busy wait in an unbounded queue. See {@link AdaptivePoolSizer} for the sizing algorithm.
+     *
+     * @param poolSizer A new sizer, dedicated to this pool.
+     */
+    public void storeAdaptiveThreadPool(THREAD_POOL_NAMES threadPoolName, AdaptivePoolSizer poolSizer) {
+        nonNull("poolSizer", poolSizer);
+
+        var initialSize = poolSizer.getPoolSize();
+        var threadPool = InstrumentedThreadPoolExecutor.create(initialSize, initialSize,
+                ADAPTIVE_POOL_THREAD_LIFE_TIME_IN_SECONDS, SECONDS, new LinkedBlockingQueue<>(),
+                namedThreadFactory(threadPoolName), RejectionPolicies.abort(), 1.0);
 
-        threadPools.compute(threadPoolName.name(), (k, v) -> {
-            if (v == null) {
-                return threadPool;
+        register(threadPoolName, threadPool);
+
+        var samplingIntervalInNanos = poolSizer.getSamplingInterval().toNanos();
+        var sizing = new AtomicReference<Future<?>>();
+        sizing.set(POOL_SIZER.scheduleAtFixedRate(() -> {
+            if (threadPool.isShutdown()) {
+                Optional.ofNullable(sizing.get()).ifPresent(future -> future.cancel(false));
             } else {
-                throw new RuntimeException("Thread pool: %s already exists".formatted(threadPoolName));
+                threadPool.resize(poolSizer.resize(threadPool.getStats(threadPoolName.name())));
             }
+        }, samplingIntervalInNanos, samplingIntervalInNanos, NANOSECONDS));
+    }
+
+    /**
+     * Registers an executor which runs every task in a new virtual thread, with no limit on the number of tasks running
+     * concurrently. Suitable for I/O bound fan-out. See {@link #storeVirtualThreadPool(Enum, int)}.
+     */
+    public void storeVirtualThreadPool(THREAD_POOL_NAMES threadPoolName) {
+        storeVirtualThreadPool(threadPoolName, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Registers an executor which runs every task in a new virtual thread, with at most maxConcurrency tasks running
+     * at any time. Excess tasks wait (without blocking the submitter) until a running task completes.
+     * On JVMs without virtual threads support (prior to Java 21), daemon platform threads are used instead.
+     */
+    public void storeVirtualThreadPool(THREAD_POOL_NAMES threadPoolName, int maxConcurrency) {
+        var concurrency = inRange("maxConcurrency", maxConcurrency, 1, Integer.MAX_VALUE, INCLUSIVE_INCLUSIVE);
+        var namePrefix = threadPoolName.name() + "-";
+
+        var threadFactory = ThreadUtils.virtualThreadFactory(namePrefix).orElseGet(() -> {
+            final var counter = new AtomicInteger();
+            return runnable -> ThreadUtils.newDaemonThread(namePrefix + counter.getAndIncrement(), runnable);
         });
+
+        register(threadPoolName, ThreadPerTaskExecutor.create(threadFactory, concurrency));
+    }
+
+    /**
+     * Registers a fixed pool for latency critical work, with one thread per given core, each thread pinned to its core
+     * (Linux only). Idle threads wait for tasks according to the given strategy, e.g. {@link WaitStrategy#busySpin()}.
+     * Pinning is best effort, see {@link CpuAffinity}. For finer control see
+     * {@link ThreadPoolSpec.ThreadPoolSpecBuilder#withCpuAffinity(int...)}.
+     */
+    public void storePinnedThreadPool(THREAD_POOL_NAMES threadPoolName, int queueCapacity, WaitStrategy waitStrategy,
+                                      int... cpus) {
+        nonNull("cpus", cpus);
+
+        storeThreadPool(threadPoolName, ThreadPoolSpec.builder(cpus.length, cpus.length)
+                .withMpmcQueue(queueCapacity, waitStrategy)
+                .withCpuAffinity(cpus)
+                .build());
     }
 
-    private final Map<String, ThreadPoolExecutor> threadPools;
+    /**
+     * Registers a work stealing pool (a {@link ForkJoinPool} in async mode) with parallelism equal to the number of
+     * cores. See {@link #storeForkJoinPool(Enum, int, boolean)}.
+     */
+    public void storeWorkStealingPool(THREAD_POOL_NAMES threadPoolName) {
+        storeForkJoinPool(threadPoolName, getSystemCoreCount(), true);
+    }
+
+    /**
+     * Registers a {@link ForkJoinPool} for CPU bound workloads, isolated from the JDK common pool.
+     * @param parallelism The target number of active worker threads.
+     * @param asyncMode True for FIFO scheduling of tasks that are never joined (event style / work stealing pools),
+     *                  false for LIFO scheduling which suits recursive fork/join decomposition (e.g. parallel streams).
+     */
+    public void storeForkJoinPool(THREAD_POOL_NAMES threadPoolName, int parallelism, boolean asyncMode) {
+        var targetParallelism = inRange("parallelism", parallelism, 1, MAX_FORK_JOIN_PARALLELISM, INCLUSIVE_INCLUSIVE);
+
+        register(threadPoolName,
+                InstrumentedForkJoinPool.create(threadPoolName.name() + "-", targetParallelism, asyncMode));
+    }
+
+    public Optional<ForkJoinPool> requestForkJoinPool(THREAD_POOL_NAMES threadPoolName) {
+        return requestThreadPool(threadPoolName)
+                .filter(ForkJoinPool.class::isInstance)
+                .map(ForkJoinPool.class::cast);
+    }
+
+    /**
+     * Runs the given computation inside the given fork join pool and waits for its result. Parallel streams started by
+     * the computation are executed by the workers of that pool instead of the JDK common pool.
+     *
+     * Usage example
+     * <pre>
+     *   var total = registry.invokeInForkJoinPool(Pools.PRICING, () -&gt;
+     *       products.parallelStream().mapToLong(this::price).sum());
+     * </pre>
+     *
+     * @throws IllegalArgumentException if no fork join pool has been registered with the given name.
+     */
+    public <T> T invokeInForkJoinPool(THREAD_POOL_NAMES threadPoolName, Supplier<T> computation) {
+        nonNull("computation", computation);
+
+        var pool = requestForkJoinPool(threadPoolName).orElseThrow(() -> new IllegalArgumentException(
+                "Fork join pool: %s does not exist".formatted(threadPoolName)));
+
+        return pool.submit(computation::get).join();
+    }
+
+    /**
+     * A back pressure signal that submitters can poll in order to slow down (or shed load) before the pool starts
+     * rejecting tasks. See {@link ThreadPoolSpec.ThreadPoolSpecBuilder#withBackPressureThreshold(double)}.
+     * @return True if the pool exists and its utilization is above its back pressure threshold.
+     */
+    public boolean isUnderBackPressure(THREAD_POOL_NAMES threadPoolName) {
+        return threadPools.get(threadPoolName.name()) instanceof InstrumentedExecutor instrumented
+                && instrumented.isUnderBackPressure();
+    }
+
+    /**
+     * @return The fraction (0.0 - 1.0) of the pool's capacity in use, if the pool exists and it is instrumented.
+     */
+    public OptionalDouble getUtilization(THREAD_POOL_NAMES threadPoolName) {
+        return threadPools.get(threadPoolName.name()) instanceof InstrumentedExecutor instrumented
+                ? OptionalDouble.of(instrumented.getUtilization())
+                : OptionalDouble.empty();
+    }
+
+    /**
+     * @return The metrics of the given pool, if it exists and it is instrumented.
+     */
+    public Optional<ThreadPoolStats> getStats(THREAD_POOL_NAMES threadPoolName) {
+        return getStats(threadPoolName.name());
+    }
+
+    /**
+     * @return The metrics of every instrumented pool of this registry, keyed by pool name.
+     */
+    public Map<String, ThreadPoolStats> getAllStats() {
+        final var stats = new LinkedHashMap<String, ThreadPoolStats>();
+        threadPools.keySet().stream().sorted()
+                .forEach(name -> getStats(name).ifPresent(s -> stats.put(name, s)));
+        return stats;
+    }
+
+    /**
+     * Shuts down the given pool and removes it from the registry, so that the name can be registered again.
+     * Queued tasks are still executed, unless the pool fails to drain within the given timeout, in which case running
+     * tasks are interrupted and queued tasks are dropped.
+     * @return The outcome, if the pool exists.
+     */
+    public Optional<ShutdownReport.PoolTermination> shutdownThreadPool(THREAD_POOL_NAMES threadPoolName,
+                                                                       Duration drainTimeout) {
+        var timeoutInNanos = noNegativeLong("drainTimeout", nonNull("drainTimeout", drainTimeout).toNanos());
+        var name = threadPoolName.name();
+
+        final ExecutorService threadPool;
+        synchronized (this) {
+            threadPool = threadPools.remove(name);
+            registrationOrder.remove(name);
+            if (threadPool != null && isJmxExportEnabled) {
+                unexportFromJmx(name);
+            }
+        }
+
+        return Optional.ofNullable(threadPool).map(pool -> terminate(name, pool, timeoutInNanos));
+    }
+
+    /**
+     * Shuts down every pool of the registry, in reverse registration order, so that pools registered later (which
+     * typically submit work to pools registered earlier) are drained first. Each pool is given the drain timeout to
+     * complete its queued tasks before being forcefully shut down. See {@link #shutdownThreadPool(Enum, Duration)}.
+     */
+    public ShutdownReport shutdown(Duration drainTimeout) {
+        var timeoutInNanos = noNegativeLong("drainTimeout", nonNull("drainTimeout", drainTimeout).toNanos());
+        var startedAt = System.nanoTime();
+
+        final List<Map.Entry<String, ExecutorService>> pools = new ArrayList<>();
+        synchronized (this) {
+            for (int i = registrationOrder.size() - 1; i >= 0; i--) {
+                final var name = registrationOrder.get(i);
+                pools.add(Map.entry(name, threadPools.remove(name)));
+                if (isJmxExportEnabled) {
+                    unexportFromJmx(name);
+                }
+            }
+            registrationOrder.clear();
+        }
+
+        var terminations = pools.stream()
+                .map(pool -> terminate(pool.getKey(), pool.getValue(), timeoutInNanos))
+                .toList();
+
+        return new ShutdownReport(terminations, Duration.ofNanos(System.nanoTime() - startedAt));
+    }
+
+    /**
+     * Shuts down the registry upon JVM shutdown. See {@link #shutdown(Duration)}. Calling it more than once has no
+     * effect.
+     */
+    public synchronized void registerShutdownHook(Duration drainTimeout) {
+        nonNull("drainTimeout", drainTimeout);
+
+        if (shutdownHook == null) {
+            shutdownHook = ThreadUtils.newThread("%s-shutdown-hook".formatted(
+                    registryName == null ? "thread-pool-registry" : registryName), () -> shutdown(drainTimeout));
+            Runtime.getRuntime().addShutdownHook(shutdownHook);
+        }
+    }
+
+    /**
+     * Exposes the metrics of every instrumented pool (current and future ones) as platform MXBeans, named
+     * {@code com.brontoblocks.thread:type=ThreadPool,registry=<enum class>,name=<pool name>}.
+     */
+    public synchronized void enableJmxExport() {
+        if (!isJmxExportEnabled) {
+            isJmxExportEnabled = true;
+            threadPools.forEach((name, pool) -> exportToJmx(name, pool));
+        }
+    }
+
+    private void register(THREAD_POOL_NAMES threadPoolName, ExecutorService threadPool) {
+        if (registryName == null) {
+            registryName = threadPoolName.getDeclaringClass().getSimpleName();
+        }
+
+        synchronized (this) {
+            threadPools.compute(threadPoolName.name(), (k, v) -> {
+                if (v == null) {
+                    return threadPool;
+                } else {
+                    throw new RuntimeException("Thread pool: %s already exists".formatted(threadPoolName));
+                }
+            });
+            registrationOrder.add(threadPoolName.name());
+
+            if (isJmxExportEnabled) {
+                exportToJmx(threadPoolName.name(), threadPool);
+            }
+        }
+    }
+
+    private static ThreadFactory namedThreadFactory(Enum<?> threadPoolName) {
+        final var counter = new AtomicInteger();
+        return runnable -> ThreadUtils.newThread(
+                "%s-%d".formatted(threadPoolName.name(), counter.incrementAndGet()), runnable);
+    }
+
+    private Optional<ThreadPoolStats> getStats(String name) {
+        return Optional.ofNullable(threadPools.get(name))
+                .filter(InstrumentedExecutor.class::isInstance)
+                .map(pool -> ((InstrumentedExecutor) pool).getStats(name));
+    }
+
+    private static ShutdownReport.PoolTermination terminate(String name, ExecutorService pool, long timeoutInNanos) {
+        final var startedAt = System.nanoTime();
+        pool.shutdown();
+
+        boolean isTerminated;
+        try {
+            isTerminated = pool.awaitTermination(timeoutInNanos, NANOSECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            isTerminated = pool.isTerminated();
+        }
+
+        final var droppedTaskCount = isTerminated ? 0 : pool.shutdownNow().size();
+        return new ShutdownReport.PoolTermination(name, isTerminated, Duration.ofNanos(System.nanoTime() - startedAt),
+                droppedTaskCount);
+    }
+
+    private void unexportFromJmx(String name) {
+        try {
+            final var server = ManagementFactory.getPlatformMBeanServer();
+            final var objectName = jmxObjectName(name);
+
+            if (server.isRegistered(objectName)) {
+                server.unregisterMBean(objectName);
+            }
+        } catch (JMException ex) {
+            throw new IllegalStateException("Failed to remove thread pool: %s from JMX".formatted(name), ex);
+        }
+    }
+
+    private void exportToJmx(String name, ExecutorService pool) {
+        if (!(pool instanceof InstrumentedExecutor instrumented)) {
+            return;
+        }
+
+        try {
+            final var server = ManagementFactory.getPlatformMBeanServer();
+            final var objectName = jmxObjectName(name);
+
+            if (server.isRegistered(objectName)) {
+                server.unregisterMBean(objectName);
+            }
+            server.registerMBean(new ThreadPoolStatsMXBeanAdapter(() -> instrumented.getStats(name)), objectName);
+        } catch (JMException ex) {
+            throw new IllegalStateException("Failed to export thread pool: %s to JMX".formatted(name), ex);
+        }
+    }
+
+    private ObjectName jmxObjectName(String name) throws MalformedObjectNameException {
+        return new ObjectName("com.brontoblocks.thread:type=ThreadPool,registry=%s,name=%s"
+                .formatted(ObjectName.quote(registryName), ObjectName.quote(name)));
+    }
+
+    private final Map<String, ExecutorService> threadPools;
+    private final List<String> registrationOrder;
+    private volatile String registryName;
+    private boolean isJmxExportEnabled;
+    private Thread shutdownHook;
+
+    private static final int MAX_FORK_JOIN_PARALLELISM = 0x7fff;
+    private static final long ADAPTIVE_POOL_THREAD_LIFE_TIME_IN_SECONDS = 20L;
+    private static final ScheduledExecutorService POOL_SIZER = createPoolSizer();
+
+    private static ScheduledExecutorService createPoolSizer() {
+        final var scheduler = new ScheduledThreadPoolExecutor(1,
+                runnable -> ThreadUtils.newDaemonThread("thread-pool-sizer", runnable));
+        scheduler.setRemoveOnCancelPolicy(true);
+        return scheduler;
+    }
 }
@@ -0,0 +1,213 @@
+package com.brontoblocks.thread;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static com.brontoblocks.utils.ArgCheck.RangeArgCheckMode.INCLUSIVE_INCLUSIVE;
+import static com.brontoblocks.utils.ArgCheck.inRange;
+import static com.brontoblocks.utils.ArgCheck.noNegativeInt;
+import static com.brontoblocks.utils.ArgCheck.noNegativeLong;
+import static com.brontoblocks.utils.ArgCheck.nonNull;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+/**
+ * Describes a thread pool to be created by {@link ThreadPoolRegistry#storeThreadPool(Enum, ThreadPoolSpec)}.
+ *
+ * By default, the pool hands tasks directly to threads (no queue) and rejects tasks once all max threads are busy.
+ * With a bounded queue, bursts are absorbed by the queue instead: the pool runs with min threads until the queue
+ * becomes full and only then grows towards max threads. Once both are exhausted the rejection policy applies.
+ *
+ * Usage example
+ * <pre>
+ *   ThreadPoolSpec.builder(4, 16)
+ *       .withThreadLifeTime(Duration.ofSeconds(60))
+ *       .withMpmcQueue(10_000)
+ *       .withRejectionPolicy(RejectionPolicies.blockWithTimeout(Duration.ofMillis(50)))
+ *       .withBackPressureThreshold(0.75)
+ *       .build();
+ * </pre>
+ */
+public final class ThreadPoolSpec {
+
+    public static ThreadPoolSpecBuilder builder(int minThreadPoolSize, int maxThreadPoolSize) {
+        final var minSize = noNegativeInt("minThreadPoolSize", minThreadPoolSize);
+        final var maxSize = inRange("maxThreadPoolSize", maxThreadPoolSize, Math.max(1, minSize), Integer.MAX_VALUE,
+                INCLUSIVE_INCLUSIVE);
+        return new ThreadPoolSpecBuilder(minSize, maxSize);
+    }
+
+    public int getMinThreadPoolSize() {
+        return minThreadPoolSize;
+    }
+
+    public int getMaxThreadPoolSize() {
+        return maxThreadPoolSize;
+    }
+
+    public long getThreadLifeTimeInSeconds() {
+        return threadLifeTimeInSeconds;
+    }
+
+    public double getBackPressureThreshold() {
+        return backPressureThreshold;
+    }
+
+    /**
+     * @return The cores the threads of the pool are pinned to, empty if the threads are not pinned.
+     */
+    public int[] getCpuAffinity() {
+        return cpuAffinity.clone();
+    }
+
+    InstrumentedThreadPoolExecutor createExecutor(ThreadFactory threadFactory) {
+        return InstrumentedThreadPoolExecutor.create(minThreadPoolSize, maxThreadPoolSize, threadLifeTimeInSeconds,
+                SECONDS, queueFactory.get(), pinned(threadFactory), rejectionPolicy, backPressureThreshold);
+    }
+
+    private ThreadFactory pinned(ThreadFactory threadFactory) {
+        if (cpuAffinity.length == 0) {
+            return threadFactory;
+        }
+
+        final var counter = new AtomicInteger();
+        return runnable -> {
+            final var cpu = cpuAffinity[Math.floorMod(counter.getAndIncrement(), cpuAffinity.length)];
+            return threadFactory.newThread(() -> {
+                CpuAffinity.pinCurrentThread(cpu);
+                runnable.run();
+            });
+        };
+    }
+
+    private ThreadPoolSpec(ThreadPoolSpecBuilder builder) {
+        this.minThreadPoolSize = builder.minThreadPoolSize;
+        this.maxThreadPoolSize = builder.maxThreadPoolSize;
+        this.threadLifeTimeInSeconds = builder.threadLifeTimeInSeconds;
+        this.queueFactory = builder.queueFactory;
+        this.rejectionPolicy = builder.rejectionPolicy;
+        this.backPressureThreshold = builder.backPressureThreshold;
+        this.cpuAffinity = builder.cpuAffinity;
+    }
+
+    private final int minThreadPoolSize;
+    private final int maxThreadPoolSize;
+    private final long threadLifeTimeInSeconds;
+    private final Supplier<BlockingQueue<Runnable>> queueFactory;
+    private final RejectedExecutionHandler rejectionPolicy;
+    private final double backPressureThreshold;
+    private final int[] cpuAffinity;
+
+    public static final class ThreadPoolSpecBuilder {
+
+        private ThreadPoolSpecBuilder(int minThreadPoolSize, int maxThreadPoolSize) {
+            this.minThreadPoolSize = minThreadPoolSize;
+            this.maxThreadPoolSize = maxThreadPoolSize;
+            this.threadLifeTimeInSeconds = DEFAULT_THREAD_LIFE_TIME_IN_SECONDS;
+            this.queueFactory = SynchronousQueue::new;
+            this.rejectionPolicy = RejectionPolicies.abort();
+            this.backPressureThreshold = DEFAULT_BACK_PRESSURE_THRESHOLD;
+            this.cpuAffinity = new int[0];
+        }
+
+        /**
+         * The time an idle thread, above the min pool size, is kept alive before being released.
+         */
+        public ThreadPoolSpecBuilder withThreadLifeTime(Duration threadLifeTime) {
+            this.threadLifeTimeInSeconds = noNegativeLong("threadLifeTime",
+                    nonNull("threadLifeTime", threadLifeTime).toSeconds());
+            return this;
+        }
+
+        public ThreadPoolSpecBuilder withArrayBlockingQueue(int capacity) {
+            final var size = inRange("capacity", capacity, 1, Integer.MAX_VALUE, INCLUSIVE_INCLUSIVE);
+            this.queueFactory = () -> new ArrayBlockingQueue<>(size);
+            return this;
+        }
+
+        public ThreadPoolSpecBuilder withLinkedBlockingQueue(int capacity) {
+            final var size = inRange("capacity", capacity, 1, Integer.MAX_VALUE, INCLUSIVE_INCLUSIVE);
+            this.queueFactory = () -> new LinkedBlockingQueue<>(size);
+            return this;
+        }
+
+        /**
+         * A lock free multi-producer multi-consumer array queue. Prefer it over the other bounded queues when many
+         * threads submit short tasks concurrently. Note that {@code ThreadPoolExecutor.remove(task)} and
+         * {@code purge()} have no effect on tasks queued in it: cancelled tasks are discarded once dequeued.
+         */
+        public ThreadPoolSpecBuilder withMpmcQueue(int capacity) {
+            final var size = inRange("capacity", capacity, 1, Integer.MAX_VALUE, INCLUSIVE_INCLUSIVE);
+            this.queueFactory = () -> new MpmcArrayBlockingQueue<>(size);
+            return this;
+        }
+
+        /**
+         * Same as withMpmcQueue(capacity), but idle pool threads wait for tasks according to the given strategy (e.g.
+         * busy spinning) instead of parking. Combined with withCpuAffinity(...) it minimizes the latency of handing a
+         * task to a pool thread. Note that a spinning idle thread keeps its core busy, even when no tasks arrive.
+         */
+        public ThreadPoolSpecBuilder withMpmcQueue(int capacity, WaitStrategy waitStrategy) {
+            final var size = inRange("capacity", capacity, 1, Integer.MAX_VALUE, INCLUSIVE_INCLUSIVE);
+            final var strategy = nonNull("waitStrategy", waitStrategy);
+            this.queueFactory = () -> new MpmcArrayBlockingQueue<>(size, strategy);
+            return this;
+        }
+
+        /**
+         * Pins the threads of the pool to the given cores (Linux only), one core per thread, in round robin. Pinning is
+         * best effort, see {@link CpuAffinity}. Typically, the pool is sized to the number of cores given, so that
+         * every thread gets a core of its own.
+         */
+        public ThreadPoolSpecBuilder withCpuAffinity(int... cpus) {
+            nonNull("cpus", cpus);
+            if (cpus.length == 0 || Arrays.stream(cpus).anyMatch(cpu -> cpu < 0)) {
+                throw new IllegalArgumentException("Argument:cpus invalid. Non-empty list of non-negative ids expected.");
+            }
+            this.cpuAffinity = cpus.clone();
+            return this;
+        }
+
+        /**
+         * See {@link RejectionPolicies} for the available policies.
+         */
+        public ThreadPoolSpecBuilder withRejectionPolicy(RejectedExecutionHandler rejectionPolicy) {
+            this.rejectionPolicy = nonNull("rejectionPolicy", rejectionPolicy);
+            return this;
+        }
+
+        /**
+         * @param threshold The fraction (0.0 - 1.0] of the pool's capacity (max threads plus queue capacity) in use,
+         *                  above which the pool reports back pressure. Default value: 0.8
+         */
+        public ThreadPoolSpecBuilder withBackPressureThreshold(double threshold) {
+            if (!(threshold > 0.0 && threshold <= 1.0)) {
+                throw new IllegalArgumentException("Argument:threshold invalid. Failed 'in-range' check.");
+            }
+            this.backPressureThreshold = threshold;
+            return this;
+        }
+
+        public ThreadPoolSpec build() {
+            return new ThreadPoolSpec(this);
+        }
+
+        private final int minThreadPoolSize;
+        private final int maxThreadPoolSize;
+        private long threadLifeTimeInSeconds;
+        private Supplier<BlockingQueue<Runnable>> queueFactory;
+        private RejectedExecutionHandler rejectionPolicy;
+        private double backPressureThreshold;
+        private int[] cpuAffinity;
+
+        private static final long DEFAULT_THREAD_LIFE_TIME_IN_SECONDS = 20L;
+        private static final double DEFAULT_BACK_PRESSURE_THRESHOLD = 0.8;
+    }
+}
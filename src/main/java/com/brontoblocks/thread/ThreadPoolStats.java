@@ -0,0 +1,35 @@
+package com.brontoblocks.thread;
+
+import com.brontoblocks.utils.LatencyHistogram;
+
+/**
+ * A point in time snapshot of the metrics of a thread pool registered in {@link ThreadPoolRegistry}.
+ *
+ * @param stealCount Tasks which idle workers took over from the queues of busy ones. Only work stealing pools steal,
+ * it is 0 for every other pool.
+ * @param queueWaitTime The time tasks spent in the queue before a thread picked them up.
+ * @param executionTime The time tasks spent running.
+ */
+public record ThreadPoolStats(
+        String poolName,
+        int poolSize,
+        int activeThreadCount,
+        int largestPoolSize,
+        int maximumPoolSize,
+        int queueSize,
+        long completedTaskCount,
+        long rejectedTaskCount,
+        long stealCount,
+        LatencyHistogram.Snapshot queueWaitTime,
+        LatencyHistogram.Snapshot executionTime) {
+
+    /**
+     * The stats of a pool which does not steal work.
+     */
+    public ThreadPoolStats(String poolName, int poolSize, int activeThreadCount, int largestPoolSize,
+                           int maximumPoolSize, int queueSize, long completedTaskCount, long rejectedTaskCount,
+                           LatencyHistogram.Snapshot queueWaitTime, LatencyHistogram.Snapshot executionTime) {
+        this(poolName, poolSize, activeThreadCount, largestPoolSize, maximumPoolSize, queueSize, completedTaskCount,
+                rejectedTaskCount, 0L, queueWaitTime, executionTime);
+    }
+}
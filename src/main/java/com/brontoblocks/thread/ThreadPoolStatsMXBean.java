@@ -0,0 +1,35 @@
+package com.brontoblocks.thread;
+
+/**
+ * JMX view of {@link ThreadPoolStats}. Registered per pool by {@link ThreadPoolRegistry#enableJmxExport()}.
+ */
+public interface ThreadPoolStatsMXBean {
+
+    int getPoolSize();
+
+    int getActiveThreadCount();
+
+    int getLargestPoolSize();
+
+    int getMaximumPoolSize();
+
+    int getQueueSize();
+
+    long getCompletedTaskCount();
+
+    long getRejectedTaskCount();
+
+    long getStealCount();
+
+    long getQueueWaitP50InNanos();
+
+    long getQueueWaitP99InNanos();
+
+    long getQueueWaitMaxInNanos();
+
+    long getExecutionTimeP50InNanos();
+
+    long getExecutionTimeP99InNanos();
+
+    long getExecutionTimeMaxInNanos();
+}
@@ -0,0 +1,82 @@
+package com.brontoblocks.thread;
+
+import java.util.function.Supplier;
+
+final class ThreadPoolStatsMXBeanAdapter implements ThreadPoolStatsMXBean {
+
+    ThreadPoolStatsMXBeanAdapter(Supplier<ThreadPoolStats> statsSupplier) {
+        this.statsSupplier = statsSupplier;
+    }
+
+    @Override
+    public int getPoolSize() {
+        return statsSupplier.get().poolSize();
+    }
+
+    @Override
+    public int getActiveThreadCount() {
+        return statsSupplier.get().activeThreadCount();
+    }
+
+    @Override
+    public int getLargestPoolSize() {
+        return statsSupplier.get().largestPoolSize();
+    }
+
+    @Override
+    public int getMaximumPoolSize() {
+        return statsSupplier.get().maximumPoolSize();
+    }
+
+    @Override
+    public int getQueueSize() {
+        return statsSupplier.get().queueSize();
+    }
+
+    @Override
+    public long getCompletedTaskCount() {
+        return statsSupplier.get().completedTaskCount();
+    }
+
+    @Override
+    public long getRejectedTaskCount() {
+        return statsSupplier.get().rejectedTaskCount();
+    }
+
+    @Override
+    public long getStealCount() {
+        return statsSupplier.get().stealCount();
+    }
+
+    @Override
+    public long getQueueWaitP50InNanos() {
+        return statsSupplier.get().queueWaitTime().percentileInNanos(50);
+    }
+
+    @Override
+    public long getQueueWaitP99InNanos() {
+        return statsSupplier.get().queueWaitTime().percentileInNanos(99);
+    }
+
+    @Override
+    public long getQueueWaitMaxInNanos() {
+        return statsSupplier.get().queueWaitTime().maxInNanos();
+    }
+
+    @Override
+    public long getExecutionTimeP50InNanos() {
+        return statsSupplier.get().executionTime().percentileInNanos(50);
+    }
+
+    @Override
+    public long getExecutionTimeP99InNanos() {
+        return statsSupplier.get().executionTime().percentileInNanos(99);
+    }
+
+    @Override
+    public long getExecutionTimeMaxInNanos() {
+        return statsSupplier.get().executionTime().maxInNanos();
+    }
+
+    private final Supplier<ThreadPoolStats> statsSupplier;
+}
@@ -1,10 +1,23 @@
 package com.brontoblocks.thread;
 
+import java.lang.reflect.Method;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
 import static com.brontoblocks.utils.ArgCheck.noNegativeLong;
+import static com.brontoblocks.utils.ArgCheck.nonNull;
 import static com.brontoblocks.utils.RandomSource.randomIntOneOf;
 
 public final class ThreadUtils {
 
+    /**
+     * Sleeps for (at least) the given millis. Interrupts are ignored, see sleepPrecisely(...) for an interruptible
+     * alternative with nanosecond resolution.
+     */
     public static void sleepInMillis(long millis) {
         noNegativeLong("milliseconds", millis);
 
@@ -24,10 +37,42 @@ public final class ThreadUtils {
         var multiplier = randomIntOneOf(0, -1, 1);
         var extraMillis = randomIntOneOf(1, 2, 3);
 
-        var total = Math.min(1, millis + ((long) multiplier * extraMillis));
+        var total = Math.max(0L, millis + ((long) multiplier * extraMillis));
         sleepInMillis(total);
     }
 
+    /**
+     * Sleeps for the given duration with an accuracy of a few micros. See {@link #sleepUntilNanoTime(long, long)}.
+     * @throws InterruptedException if the thread is interrupted while sleeping.
+     */
+    public static void sleepPrecisely(Duration duration) throws InterruptedException {
+        final var nanos = noNegativeLong("duration", nonNull("duration", duration).toNanos());
+        sleepUntilNanoTime(System.nanoTime() + nanos, DEFAULT_SPIN_THRESHOLD_IN_NANOS);
+    }
+
+    /**
+     * Sleeps until {@link System#nanoTime()} reaches the given deadline. Parking a thread typically overshoots by
+     * tens of micros (timer slack and scheduling latency), hence the thread parks until spinThresholdInNanos before
+     * the deadline and spins for the remaining time. The larger the threshold the more accurate the wake up, at the
+     * cost of burning a core for longer.
+     * @throws InterruptedException if the thread is interrupted while sleeping.
+     */
+    public static void sleepUntilNanoTime(long deadline, long spinThresholdInNanos) throws InterruptedException {
+        noNegativeLong("spinThresholdInNanos", spinThresholdInNanos);
+
+        long remaining;
+        while ((remaining = deadline - System.nanoTime()) > spinThresholdInNanos) {
+            LockSupport.parkNanos(remaining - spinThresholdInNanos);
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+        }
+
+        while (deadline - System.nanoTime() > 0L) {
+            Thread.onSpinWait();
+        }
+    }
+
     public static Thread newDaemonThread(String name, Runnable runnable) {
         var t = new Thread(runnable);
         t.setName(name);
@@ -42,10 +87,77 @@ public final class ThreadUtils {
         return t;
     }
 
+    /**
+     * Creates a (non daemon) thread which pins itself to the given cores, before running the given runnable.
+     * Pinning is best effort, see {@link CpuAffinity}.
+     */
+    public static Thread newPinnedThread(String name, Runnable runnable, int... cpus) {
+        final var cpuList = nonNull("cpus", cpus).clone();
+        return newThread(name, () -> {
+            CpuAffinity.pinCurrentThread(cpuList);
+            runnable.run();
+        });
+    }
+
+    /**
+     * @return A factory of virtual threads named {@code <namePrefix><n>}, if the running JVM supports virtual threads.
+     * This library targets Java 17, hence the factory is resolved reflectively.
+     */
+    public static Optional<ThreadFactory> virtualThreadFactory(String namePrefix) {
+        try {
+            final Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            final Method ofVirtual = Thread.class.getMethod("ofVirtual");
+            final Method name = builderClass.getMethod("name", String.class, long.class);
+            final Method factory = builderClass.getMethod("factory");
+
+            final Object builder = name.invoke(ofVirtual.invoke(null), namePrefix, 0L);
+            return Optional.of((ThreadFactory) factory.invoke(builder));
+        } catch (ReflectiveOperationException | RuntimeException ex) {
+            // Not supported (pre Java 21) or not enabled (preview in Java 19/20)
+            return Optional.empty();
+        }
+    }
+
+    public static boolean isVirtualThreadSupported() {
+        return VIRTUAL_THREADS_SUPPORTED;
+    }
+
+    /**
+     * Runs the given runnable after the given millis, on a new (non daemon) thread, hence the runnable runs even if the
+     * JVM is otherwise about to exit. Prefer {@link #scheduleWithDelay(Runnable, Duration)} for many delayed tasks.
+     */
     public static void runWithDelay(Runnable runnable, long runAfter) {
+        noNegativeLong("runAfter", runAfter);
         new Thread(() -> {
             sleepInMillis(runAfter);
             runnable.run();
         }).start();
     }
+
+    /**
+     * Runs the given runnable after the given delay, on a daemon thread, hence pending runnables are dropped when the
+     * JVM exits. Delays are tracked by a shared {@link HashedWheelTimer} with a resolution of 10 millis, hence
+     * scheduling thousands of delayed tasks (e.g. timeouts) costs no thread until they expire.
+     * @return A handle through which the runnable can be cancelled before it runs.
+     */
+    public static HashedWheelTimer.Timeout scheduleWithDelay(Runnable runnable, Duration delay) {
+        return DelayedTasks.TIMER.schedule(runnable, delay);
+    }
+
+    static final long DEFAULT_SPIN_THRESHOLD_IN_NANOS = 100_000L;
+    private static final boolean VIRTUAL_THREADS_SUPPORTED = virtualThreadFactory("probe-").isPresent();
+
+    /**
+     * Lazily initialized upon the first delayed task. Expired tasks are run on a cached pool, so that a slow task does
+     * not hold back the timer.
+     */
+    private static final class DelayedTasks {
+
+        private static final AtomicInteger THREAD_COUNTER = new AtomicInteger();
+
+        private static final HashedWheelTimer TIMER = HashedWheelTimer.builder("delayed-tasks-timer")
+                .withTaskExecutor(Executors.newCachedThreadPool(runnable ->
+                        newDaemonThread("delayed-task-" + THREAD_COUNTER.incrementAndGet(), runnable)))
+                .build();
+    }
 }
@@ -0,0 +1,65 @@
+package com.brontoblocks.thread;
+
+import java.time.Duration;
+import java.util.concurrent.locks.LockSupport;
+
+import static com.brontoblocks.utils.ArgCheck.RangeArgCheckMode.INCLUSIVE_INCLUSIVE;
+import static com.brontoblocks.utils.ArgCheck.inRange;
+import static com.brontoblocks.utils.ArgCheck.noNegativeInt;
+import static com.brontoblocks.utils.ArgCheck.nonNull;
+
+/**
+ * Describes how a thread waits for work (e.g. a pool thread waiting for a task) without blocking on a lock. Parking a
+ * thread and waking it up again costs tens of micros and may move the thread to another core. A thread that keeps
+ * spinning instead picks up new work within nanos, at the cost of burning its core, hence spinning suits threads
+ * pinned to dedicated cores (see {@link CpuAffinity}).
+ *
+ * Implementations are stateless, hence they can be shared among threads.
+ */
+@FunctionalInterface
+public interface WaitStrategy {
+
+    /**
+     * Called every time the thread finds no work.
+     * @param idleCount The number of consecutive times no work was found so far, starting from zero.
+     */
+    void idle(int idleCount);
+
+    /**
+     * Spins on the core. Lowest latency, while a core is kept 100% busy.
+     */
+    static WaitStrategy busySpin() {
+        return idleCount -> Thread.onSpinWait();
+    }
+
+    /**
+     * Yields the core to other runnable threads, if any, between attempts.
+     */
+    static WaitStrategy yielding() {
+        return idleCount -> Thread.yield();
+    }
+
+    /**
+     * Spins for the given number of attempts, then yields for the given number of attempts and then parks for
+     * exponentially increasing periods, up to the given max. Trades a little latency for releasing the core when no work
+     * arrives for a while.
+     */
+    static WaitStrategy backoff(int spins, int yields, Duration maxPark) {
+        final var maxSpins = noNegativeInt("spins", spins);
+        final var maxYields = maxSpins + noNegativeInt("yields", yields);
+        final var maxParkInNanos = inRange("maxPark", nonNull("maxPark", maxPark).toNanos(), 1L, Long.MAX_VALUE,
+                INCLUSIVE_INCLUSIVE);
+
+        return idleCount -> {
+            if (idleCount < maxSpins) {
+                Thread.onSpinWait();
+            } else if (idleCount < maxYields) {
+                Thread.yield();
+            } else {
+                // 1 micro, doubled on every attempt
+                final var shift = Math.min(idleCount - maxYields, 30);
+                LockSupport.parkNanos(Math.min(maxParkInNanos, 1_000L << shift));
+            }
+        };
+    }
+}
@@ -84,6 +84,24 @@ public final class ArgCheck {
         return numToTest;
     }
 
+    public static double inRange(String argName, double numToTest, double lowerBoundary, double upperBoundary,
+                                  RangeArgCheckMode mode) {
+
+        if (!(numToTest >= lowerBoundary && numToTest <= upperBoundary)) {
+            throw new IllegalArgumentException(format("Argument:%s invalid. Failed 'in-range' check (not in range).", argName));
+        }
+
+        if (numToTest == lowerBoundary && (mode == RangeArgCheckMode.EXCLUSIVE_EXCLUSIVE || mode == RangeArgCheckMode.EXCLUSIVE_INCLUSIVE)) {
+            throw new IllegalArgumentException(format("Argument:%s invalid. Failed 'in-range' check (lower-boundary).", argName));
+        }
+
+        if (numToTest == upperBoundary && (mode == RangeArgCheckMode.EXCLUSIVE_EXCLUSIVE || mode == RangeArgCheckMode.INCLUSIVE_EXCLUSIVE)) {
+            throw new IllegalArgumentException(format("Argument:%s invalid. Failed 'in-range' check (upper-boundary).", argName));
+        }
+
+        return numToTest;
+    }
+
     public static <T> T oneOf(String argName, T arg, T... options) {
 
         for (T option : options) {
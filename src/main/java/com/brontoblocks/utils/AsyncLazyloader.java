@@ -0,0 +1,153 @@
+package com.brontoblocks.utils;
+
+import java.util.Collection;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import static com.brontoblocks.utils.ArgCheck.nonNull;
+
+/**
+ * The non-blocking counterpart of {@link Lazyloader}. The expensive operation is started exactly once, by the first
+ * get() call, and every caller receives a future of its result. No caller ever blocks (nor holds a lock) while the
+ * operation runs, which makes this class suitable for virtual threads and for warming up many resources in parallel.
+ *
+ * Loaders can be chained, in which case the remapping function runs once the parent has been loaded, again without
+ * blocking any thread in the meantime.
+ *
+ * A load that completes exceptionally is not cached. The failure is propagated to all callers waiting for it, while
+ * the next get() starts a new load.
+ *
+ * Usage example
+ * <pre>
+ *   var config = AsyncLazyloader.with(() -&gt; readConfig(), ioExecutor);
+ *   var connectionPool = config.chain(cfg -&gt; createPool(cfg), ioExecutor);
+ *   var cache = config.chain(cfg -&gt; buildCache(cfg), cpuExecutor);
+ *
+ *   AsyncLazyloader.warmUp(List.of(connectionPool, cache)).join();
+ * </pre>
+ *
+ * This class IS thread safe.
+ * @param <T> The result of the expensive operation which should be cached and loaded lazily.
+ */
+public final class AsyncLazyloader<T> {
+
+    /**
+     * @param operation The expensive operation. It will run on the given executor.
+     */
+    public static <T> AsyncLazyloader<T> with(Supplier<T> operation, Executor executor) {
+        nonNull("operation", operation);
+        nonNull("executor", executor);
+        return new AsyncLazyloader<>(() -> CompletableFuture.supplyAsync(operation, executor));
+    }
+
+    /**
+     * @param operation An operation which is already asynchronous (e.g. a non-blocking http call).
+     */
+    public static <T> AsyncLazyloader<T> withAsync(Supplier<CompletableFuture<T>> operation) {
+        return new AsyncLazyloader<>(nonNull("operation", operation));
+    }
+
+    /**
+     * Starts loading all the given loaders (if not started already) so that they get loaded concurrently.
+     * @return A future which completes once every loader has been loaded, or exceptionally if any of them failed.
+     */
+    public static CompletableFuture<Void> warmUp(Collection<? extends AsyncLazyloader<?>> loaders) {
+        return CompletableFuture.allOf(nonNull("loaders", loaders).stream()
+                .map(AsyncLazyloader::get)
+                .toArray(CompletableFuture[]::new));
+    }
+
+    /**
+     * @param remapping Runs on the given executor once this loader's value is available.
+     */
+    public <U> AsyncLazyloader<U> chain(Function<T, U> remapping, Executor executor) {
+        nonNull("remapping", remapping);
+        nonNull("executor", executor);
+        return new AsyncLazyloader<>(() -> get().thenApplyAsync(remapping, executor));
+    }
+
+    /**
+     * @param remapping A cheap function which runs on the thread that completes this loader's value.
+     */
+    public <U> AsyncLazyloader<U> chain(Function<T, U> remapping) {
+        nonNull("remapping", remapping);
+        return new AsyncLazyloader<>(() -> get().thenApply(remapping));
+    }
+
+    public <U> AsyncLazyloader<U> chainAsync(Function<T, CompletableFuture<U>> remapping) {
+        nonNull("remapping", remapping);
+        return new AsyncLazyloader<>(() -> get().thenCompose(remapping));
+    }
+
+    /**
+     * @return A future of the loaded value. Every call returns a new dependent future, so cancelling or completing it
+     * does not affect other callers.
+     */
+    public CompletableFuture<T> get() {
+        var current = loading.get();
+        if (current == null) {
+            final var created = new CompletableFuture<T>();
+            if (loading.compareAndSet(null, created)) {
+                start(created);
+                current = created;
+            } else {
+                current = loading.get();
+            }
+        }
+        return current.copy();
+    }
+
+    /**
+     * Performs the expensive operation once again. Until the new load completes successfully, get() keeps returning
+     * the previously loaded value. If this loader was created using chain(...), only the remapping function is
+     * performed again (see {@link Lazyloader} for the same semantics).
+     */
+    public CompletableFuture<T> reload() {
+        final var created = new CompletableFuture<T>();
+        runOperation().whenComplete((value, ex) -> {
+            if (ex == null) {
+                loading.set(CompletableFuture.completedFuture(value));
+                created.complete(value);
+            } else {
+                created.completeExceptionally(ex);
+            }
+        });
+        return created.copy();
+    }
+
+    public boolean isLoaded() {
+        final var current = loading.get();
+        return current != null && current.isDone() && !current.isCompletedExceptionally();
+    }
+
+    private void start(CompletableFuture<T> target) {
+        runOperation().whenComplete((value, ex) -> {
+            if (ex == null) {
+                target.complete(value);
+            } else {
+                loading.compareAndSet(target, null);
+                target.completeExceptionally(ex);
+            }
+        });
+    }
+
+    private CompletableFuture<T> runOperation() {
+        try {
+            return Objects.requireNonNull(operation.get(), "operation returned a null future");
+        } catch (Throwable ex) {
+            return CompletableFuture.failedFuture(ex);
+        }
+    }
+
+    private AsyncLazyloader(Supplier<CompletableFuture<T>> operation) {
+        this.operation = operation;
+        this.loading = new AtomicReference<>();
+    }
+
+    private final Supplier<CompletableFuture<T>> operation;
+    private final AtomicReference<CompletableFuture<T>> loading;
+}
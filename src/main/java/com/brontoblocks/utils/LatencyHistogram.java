@@ -0,0 +1,122 @@
+package com.brontoblocks.utils;
+
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import static com.brontoblocks.utils.ArgCheck.RangeArgCheckMode.INCLUSIVE_INCLUSIVE;
+import static com.brontoblocks.utils.ArgCheck.inRange;
+import static com.brontoblocks.utils.ArgCheck.nonNull;
+
+/**
+ * A lock free histogram for durations expressed in nanoseconds. Recorded values are grouped in power of two buckets,
+ * meaning bucket i holds values in range [2^(i-1), 2^i). Precision is therefore within a factor of two, which is more
+ * than enough to reason about latency distributions (p50/p99/max) at a negligible recording cost.
+ *
+ * This class IS thread safe.
+ */
+public final class LatencyHistogram {
+
+    public static LatencyHistogram create() {
+        return new LatencyHistogram();
+    }
+
+    public void record(long nanos) {
+        final var value = Math.max(0L, nanos);
+        buckets.incrementAndGet(Long.SIZE - Long.numberOfLeadingZeros(value));
+        count.increment();
+        sum.add(value);
+        max.accumulate(value);
+    }
+
+    public Snapshot snapshot() {
+        final var copy = new long[BUCKET_COUNT];
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            copy[i] = buckets.get(i);
+        }
+        return new Snapshot(copy, count.sum(), sum.sum(), max.get());
+    }
+
+    private LatencyHistogram() {
+        this.buckets = new AtomicLongArray(BUCKET_COUNT);
+        this.count = new LongAdder();
+        this.sum = new LongAdder();
+        this.max = new LongAccumulator(Math::max, 0L);
+    }
+
+    private final AtomicLongArray buckets;
+    private final LongAdder count;
+    private final LongAdder sum;
+    private final LongAccumulator max;
+
+    private static final int BUCKET_COUNT = Long.SIZE + 1;
+
+    /**
+     * A point in time copy of a histogram. Counters are read individually, hence under concurrent recording the
+     * totals may be off by the few values that were recorded while the snapshot was taken. Snapshots are immutable,
+     * the bucket counts are copied in and out.
+     */
+    public record Snapshot(long[] buckets, long count, long sumInNanos, long maxInNanos) {
+
+        public Snapshot {
+            buckets = nonNull("buckets", buckets).clone();
+        }
+
+        /**
+         * @return A copy of the bucket counts, where bucket i holds values in range [2^(i-1), 2^i).
+         */
+        @Override
+        public long[] buckets() {
+            return buckets.clone();
+        }
+
+        public double meanInNanos() {
+            return count == 0 ? 0.0 : sumInNanos / (double) count;
+        }
+
+        /**
+         * @param percentile A value in range [0, 100].
+         * @return The upper boundary (in nanos) of the bucket which contains the requested percentile, capped by the
+         * maximum value recorded.
+         */
+        public long percentileInNanos(double percentile) {
+            inRange("percentile", percentile, 0.0, 100.0, INCLUSIVE_INCLUSIVE);
+
+            if (count == 0) {
+                return 0L;
+            }
+
+            final var rank = (long) Math.ceil(count * percentile / 100.0);
+            var seen = 0L;
+            for (int i = 0; i < buckets.length; i++) {
+                seen += buckets[i];
+                if (seen >= rank && seen > 0) {
+                    return Math.min(maxInNanos, i == 0 ? 0L : i >= Long.SIZE - 1 ? Long.MAX_VALUE : (1L << i) - 1);
+                }
+            }
+            return maxInNanos;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof Snapshot other
+                    && Arrays.equals(buckets, other.buckets)
+                    && count == other.count
+                    && sumInNanos == other.sumInNanos
+                    && maxInNanos == other.maxInNanos;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(Arrays.hashCode(buckets), count, sumInNanos, maxInNanos);
+        }
+
+        @Override
+        public String toString() {
+            return "Snapshot[buckets=%s, count=%d, sumInNanos=%d, maxInNanos=%d]"
+                    .formatted(Arrays.toString(buckets), count, sumInNanos, maxInNanos);
+        }
+    }
+}
@@ -1,14 +1,27 @@
 package com.brontoblocks.utils;
 
+import com.brontoblocks.chrono.TimeKeeper;
+import com.brontoblocks.exception.WrappedCheckedException;
+
+import java.lang.ref.SoftReference;
+import java.time.Duration;
+import java.util.Arrays;
 import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.function.Function;
 import java.util.function.Supplier;
 
+import static com.brontoblocks.utils.ArgCheck.noNegativeLong;
+import static com.brontoblocks.utils.ArgCheck.nonNull;
+
 /**
  * This class is a handy utility where an expensive resource can be fetched. The fetching operation is guaranteed to
  * be performed exactly once. Multiple subsequent invocations have no effect and will be served from in memory
- * cached data.
+ * cached data. A null result is a valid result and is cached as well.
  *
  * This method can be chained so that a new lazy loader can be generated, given a remapping function
  * (possibly containing another expensive call). The same semantics apply for the newly created LazyLoader instance.
@@ -18,35 +31,74 @@ import java.util.function.Supplier;
  * parent's cached data will not be affected. In case parent LazyLoader needs to be updated then reload should be called
  * upon that object and prior to this object's reload() invocation.
  *
+ * A LazyLoader created via builder(...) can additionally expire its value, in which case the next get() performs the
+ * expensive operation again:
+ * <ul>
+ *     <li>{@code expireAfterWrite} - The value expires once the given time has passed since it was loaded.</li>
+ *     <li>{@code expireAfterAccess} - The value expires once it has not been accessed for the given time.</li>
+ *     <li>{@code softlyReferenced} - The value is held through a {@link SoftReference}, so that the GC can reclaim it
+ *     under memory pressure.</li>
+ *     <li>{@code cacheFailuresFor} - A failed load is remembered for the given time. Until then, get() rethrows the
+ *     same failure without performing the expensive operation again.</li>
+ * </ul>
+ * Expiry is checked upon access: an expired value is not served, but it stays referenced (and is not reclaimed by the
+ * GC) until the next get() or reload() replaces it. Values which must not outlive their expiry while idle should be
+ * softly referenced as well.
+ *
+ * Loading is guarded by a {@link ReentrantLock} rather than a monitor, hence callers running on virtual threads do
+ * not pin their carrier thread while waiting for a load in progress. For non-blocking usage see getAsync(...) and
+ * {@link AsyncLazyloader}.
+ *
  * This class IS thread safe.
  * @param <T> The expensive operation which should be cached and loaded lazily.
  */
 public final class Lazyloader<T> {
 
     public static <T> Lazyloader<T> with(Supplier<T> operation) {
-        return new Lazyloader<>(operation);
+        return new Lazyloader<>(operation, Options.DEFAULT);
+    }
+
+    public static <T> LazyloaderBuilder<T> builder(Supplier<T> operation) {
+        return new LazyloaderBuilder<>(nonNull("operation", operation));
     }
 
     public <U> Lazyloader<U> chain(Function<T, U> remapping) {
         return Lazyloader.with(() -> remapping.apply(get()));
     }
 
-    private Lazyloader(Supplier<T> op) {
+    /**
+     * Loads all the given loaders concurrently on the given executor.
+     * @return A future which completes once every loader has been loaded, or exceptionally if any of them failed.
+     */
+    public static CompletableFuture<Void> warmUp(Executor executor, Lazyloader<?>... loaders) {
+        nonNull("executor", executor);
+        return CompletableFuture.allOf(Arrays.stream(nonNull("loaders", loaders))
+                .map(loader -> loader.getAsync(executor))
+                .toArray(CompletableFuture[]::new));
+    }
+
+    private Lazyloader(Supplier<T> op, Options options) {
+        lock = new ReentrantLock();
+        pendingLoad = new AtomicReference<>();
         isReloadInProgress = new AtomicBoolean(false);
         operation = op;
-        val = null;
+        this.options = options;
+        holder = null;
+        failure = null;
     }
 
     public T reload() {
         boolean started = false;
-        T localRef = null;
         try {
             if (isReloadInProgress.compareAndSet(false, true)) {
                 started = true;
-                val = localRef = operation.get();
+                final T localRef = operation.get();
+                holder = newHolder(localRef);
+                failure = null;
                 return localRef;
             } else {
-                return val;
+                final Object localRef = peek();
+                return localRef == ABSENT ? null : cast(localRef);
             }
         } finally {
             if (started) {
@@ -56,28 +108,152 @@ public final class Lazyloader<T> {
     }
 
     public T get() {
-        T localRef = val;
-        if (localRef == null) {
-            synchronized (this) {
-                localRef = val;
-                if (localRef == null) {
-                    val = localRef = operation.get();
+        Object localRef = peek();
+        if (localRef == ABSENT) {
+            lock.lock();
+            try {
+                localRef = peek();
+                if (localRef == ABSENT) {
+                    localRef = load();
                 }
+            } finally {
+                lock.unlock();
+            }
+        }
+        return cast(localRef);
+    }
+
+    /**
+     * Same as get() but the expensive operation (if not performed already) runs on the given executor instead of the
+     * caller's thread. An already loaded value is returned as a completed future. Callers arriving while a load is
+     * pending share it, hence a single executor thread is occupied regardless of their number. Every call returns a
+     * new dependent future, so cancelling or completing it does not affect other callers.
+     */
+    public CompletableFuture<T> getAsync(Executor executor) {
+        nonNull("executor", executor);
+        while (true) {
+            final Object localRef = peek();
+            if (localRef != ABSENT) {
+                return CompletableFuture.completedFuture(cast(localRef));
+            }
+
+            final var current = pendingLoad.get();
+            if (current != null) {
+                return current.copy();
+            }
+
+            final var created = new CompletableFuture<T>();
+            if (pendingLoad.compareAndSet(null, created)) {
+                startLoad(created, executor);
+                return created.copy();
             }
         }
-        return localRef;
+    }
+
+    /**
+     * Same as getAsync(executor) using the default asynchronous executor of {@link CompletableFuture}.
+     * Expensive operations that block on I/O should provide a dedicated executor instead.
+     */
+    public CompletableFuture<T> getAsync() {
+        return getAsync(DEFAULT_ASYNC_EXECUTOR);
     }
 
     public void changeProvider(Supplier<T> newOperation) {
-        synchronized (this) {
-            if (val == null) {
+        lock.lock();
+        try {
+            if (holder == null) {
                 operation = newOperation;
             } else {
                 throw new IllegalStateException("Provider can be configured only before any get() is called.");
             }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return The loaded value, or ABSENT if the value has never been loaded, has expired or has been reclaimed.
+     */
+    private Object peek() {
+        final var localHolder = holder;
+        if (localHolder == null) {
+            return ABSENT;
+        }
+
+        if (!options.isTimeBounded()) {
+            return localHolder.value();
+        }
+
+        final var now = options.timeKeeper().getNanoTime();
+        if (now - localHolder.loadedAtNanos > options.expireAfterWriteInNanos()
+                || now - localHolder.lastAccessedAtNanos > options.expireAfterAccessInNanos()) {
+            return ABSENT;
+        }
+
+        final var localRef = localHolder.value();
+        if (localRef != ABSENT && options.expireAfterAccessInNanos() != UNBOUNDED) {
+            localHolder.lastAccessedAtNanos = now;
+        }
+        return localRef;
+    }
+
+    private void startLoad(CompletableFuture<T> target, Executor executor) {
+        try {
+            CompletableFuture.supplyAsync(this::get, executor).whenComplete((value, ex) -> {
+                pendingLoad.compareAndSet(target, null);
+                if (ex == null) {
+                    target.complete(value);
+                } else {
+                    target.completeExceptionally(ex);
+                }
+            });
+        } catch (RuntimeException ex) {
+            // e.g. rejected by the executor
+            pendingLoad.compareAndSet(target, null);
+            target.completeExceptionally(ex);
+        }
+    }
+
+    private T load() {
+        final var now = options.timeKeeper().getNanoTime();
+        final var localFailure = failure;
+        if (localFailure != null && now - localFailure.retryAtNanos() < 0L) {
+            throw rethrow(localFailure.cause());
+        }
+
+        try {
+            final T localRef = operation.get();
+            holder = newHolder(localRef);
+            failure = null;
+            return localRef;
+        } catch (Throwable ex) {
+            if (options.failureRetryDelayInNanos() > 0L) {
+                failure = new Failure(ex, now + options.failureRetryDelayInNanos());
+            }
+            throw ex;
         }
     }
 
+    private Holder<T> newHolder(T value) {
+        return new Holder<>(value, options.isSoftlyReferenced() && value != null,
+                options.isTimeBounded() ? options.timeKeeper().getNanoTime() : 0L);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T cast(Object value) {
+        return (T) value;
+    }
+
+    private static RuntimeException rethrow(Throwable cause) {
+        if (cause instanceof RuntimeException runtimeException) {
+            return runtimeException;
+        }
+        if (cause instanceof Error error) {
+            throw error;
+        }
+        return WrappedCheckedException.of(cause);
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
@@ -85,15 +261,112 @@ public final class Lazyloader<T> {
         final Lazyloader<?> that = (Lazyloader<?>) o;
         return Objects.equals(isReloadInProgress, that.isReloadInProgress) &&
             Objects.equals(operation, that.operation) &&
-            Objects.equals(val, that.val);
+            Objects.equals(holder, that.holder);
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(isReloadInProgress, operation, val);
+        return Objects.hash(isReloadInProgress, operation, holder);
     }
 
+    private final ReentrantLock lock;
+    private final AtomicReference<CompletableFuture<T>> pendingLoad;
     private final AtomicBoolean isReloadInProgress;
+    private final Options options;
     private volatile Supplier<T> operation;
-    private volatile T val;
+    private volatile Holder<T> holder;
+    private volatile Failure failure;
+
+    private static final Object ABSENT = new Object();
+    private static final long UNBOUNDED = Long.MAX_VALUE;
+    private static final Executor DEFAULT_ASYNC_EXECUTOR = new CompletableFuture<Void>().defaultExecutor();
+
+    private static final class Holder<T> {
+
+        private Holder(T value, boolean softlyReferenced, long loadedAtNanos) {
+            this.strongValue = softlyReferenced ? null : value;
+            this.softValue = softlyReferenced ? new SoftReference<>(value) : null;
+            this.loadedAtNanos = loadedAtNanos;
+            this.lastAccessedAtNanos = loadedAtNanos;
+        }
+
+        private Object value() {
+            if (softValue == null) {
+                return strongValue;
+            }
+            final T localRef = softValue.get();
+            return localRef == null ? ABSENT : localRef;
+        }
+
+        private final T strongValue;
+        private final SoftReference<T> softValue;
+        private final long loadedAtNanos;
+        private volatile long lastAccessedAtNanos;
+    }
+
+    private record Failure(Throwable cause, long retryAtNanos) { }
+
+    private record Options(long expireAfterWriteInNanos, long expireAfterAccessInNanos, boolean isSoftlyReferenced,
+                           long failureRetryDelayInNanos, TimeKeeper timeKeeper) {
+
+        private boolean isTimeBounded() {
+            return expireAfterWriteInNanos != UNBOUNDED || expireAfterAccessInNanos != UNBOUNDED;
+        }
+
+        private static final Options DEFAULT =
+                new Options(UNBOUNDED, UNBOUNDED, false, 0L, TimeKeeper.createWithRealTimeKeeping());
+    }
+
+    public static final class LazyloaderBuilder<T> {
+
+        private LazyloaderBuilder(Supplier<T> operation) {
+            this.operation = operation;
+            this.expireAfterWriteInNanos = UNBOUNDED;
+            this.expireAfterAccessInNanos = UNBOUNDED;
+            this.isSoftlyReferenced = false;
+            this.failureRetryDelayInNanos = 0L;
+            this.timeKeeper = Options.DEFAULT.timeKeeper();
+        }
+
+        public LazyloaderBuilder<T> expireAfterWrite(Duration duration) {
+            this.expireAfterWriteInNanos = toNanos("duration", duration);
+            return this;
+        }
+
+        public LazyloaderBuilder<T> expireAfterAccess(Duration duration) {
+            this.expireAfterAccessInNanos = toNanos("duration", duration);
+            return this;
+        }
+
+        public LazyloaderBuilder<T> softlyReferenced() {
+            this.isSoftlyReferenced = true;
+            return this;
+        }
+
+        public LazyloaderBuilder<T> cacheFailuresFor(Duration retryDelay) {
+            this.failureRetryDelayInNanos = toNanos("retryDelay", retryDelay);
+            return this;
+        }
+
+        public LazyloaderBuilder<T> withTimeKeeper(TimeKeeper timeKeeper) {
+            this.timeKeeper = nonNull("timeKeeper", timeKeeper);
+            return this;
+        }
+
+        public Lazyloader<T> build() {
+            return new Lazyloader<>(operation, new Options(expireAfterWriteInNanos, expireAfterAccessInNanos,
+                    isSoftlyReferenced, failureRetryDelayInNanos, timeKeeper));
+        }
+
+        private static long toNanos(String argName, Duration duration) {
+            return noNegativeLong(argName, nonNull(argName, duration).toNanos());
+        }
+
+        private final Supplier<T> operation;
+        private long expireAfterWriteInNanos;
+        private long expireAfterAccessInNanos;
+        private boolean isSoftlyReferenced;
+        private long failureRetryDelayInNanos;
+        private TimeKeeper timeKeeper;
+    }
 }
@@ -0,0 +1,174 @@
+package com.brontoblocks.utils;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+
+import static com.brontoblocks.utils.ArgCheck.nonEmpty;
+import static com.brontoblocks.utils.ArgCheck.nonNull;
+import static java.lang.String.format;
+
+/**
+ * Warms up a set of {@link Lazyloader}s which depend on each other, as fast as possible. The dependencies are declared
+ * explicitly upon registration and form a directed acyclic graph. Upon warm up, every loader is loaded on the given
+ * executor as soon as all of its dependencies have been loaded. Consequently, independent loaders are loaded
+ * concurrently, while a loader created through chain(...) finds its parent already loaded and never waits for it.
+ *
+ * Usage example
+ * <pre>
+ *   var report = LazyloaderGraph.builder()
+ *       .add("config", configLoader)
+ *       .add("database", databaseLoader, "config")
+ *       .add("search-index", searchIndexLoader, "config")
+ *       .add("pricing", pricingLoader, "database", "search-index")
+ *       .build()
+ *       .warmUp(executor)
+ *       .join();
+ *
+ *   report.loadTimes().forEach((name, time) -&gt; log.info("{} loaded in {}", name, time));
+ * </pre>
+ *
+ * If a loader fails, the loaders depending on it (directly or not) are not loaded and the returned future completes
+ * exceptionally. Loaders that do not depend on the failed one are still loaded.
+ *
+ * This class IS thread safe.
+ */
+public final class LazyloaderGraph {
+
+    public static LazyloaderGraphBuilder builder() {
+        return new LazyloaderGraphBuilder();
+    }
+
+    /**
+     * @return The names of the loaders in an order where every loader comes after its dependencies.
+     */
+    public List<String> getTopologicalOrder() {
+        return topologicalOrder;
+    }
+
+    public CompletableFuture<WarmUpReport> warmUp(Executor executor) {
+        nonNull("executor", executor);
+
+        final var startedAt = System.nanoTime();
+        final var loadTimes = new ConcurrentHashMap<String, Duration>();
+        final var futures = new HashMap<String, CompletableFuture<Void>>();
+
+        for (String name : topologicalOrder) {
+            final var node = nodes.get(name);
+            final var dependencies = node.dependencies().stream()
+                    .map(futures::get)
+                    .toArray(CompletableFuture[]::new);
+
+            futures.put(name, CompletableFuture.allOf(dependencies).thenRunAsync(() -> {
+                final var nodeStartedAt = System.nanoTime();
+                node.loader().get();
+                loadTimes.put(name, Duration.ofNanos(System.nanoTime() - nodeStartedAt));
+            }, executor));
+        }
+
+        return CompletableFuture.allOf(futures.values().toArray(CompletableFuture[]::new))
+                .thenApply(ignored -> {
+                    final var orderedLoadTimes = new LinkedHashMap<String, Duration>();
+                    topologicalOrder.forEach(name -> orderedLoadTimes.put(name, loadTimes.get(name)));
+                    return new WarmUpReport(Collections.unmodifiableMap(orderedLoadTimes),
+                            Duration.ofNanos(System.nanoTime() - startedAt));
+                });
+    }
+
+    private LazyloaderGraph(Map<String, Node> nodes, List<String> topologicalOrder) {
+        this.nodes = nodes;
+        this.topologicalOrder = topologicalOrder;
+    }
+
+    private final Map<String, Node> nodes;
+    private final List<String> topologicalOrder;
+
+    private record Node(Lazyloader<?> loader, Set<String> dependencies) { }
+
+    /**
+     * @param loadTimes The time each loader took to load (excluding the time spent waiting for its dependencies),
+     *                  in topological order.
+     * @param totalTime The wall clock time of the whole warm up.
+     */
+    public record WarmUpReport(Map<String, Duration> loadTimes, Duration totalTime) { }
+
+    public static final class LazyloaderGraphBuilder {
+
+        private LazyloaderGraphBuilder() {
+            this.nodes = new LinkedHashMap<>();
+        }
+
+        public LazyloaderGraphBuilder add(String name, Lazyloader<?> loader, String... dependsOn) {
+            nonEmpty("name", name);
+            nonNull("loader", loader);
+
+            if (nodes.containsKey(name)) {
+                throw new IllegalArgumentException(format("Loader:%s is already registered.", name));
+            }
+
+            nodes.put(name, new Node(loader, Set.of(nonNull("dependsOn", dependsOn))));
+            return this;
+        }
+
+        /**
+         * @throws IllegalArgumentException if a dependency is not registered or the dependencies form a cycle.
+         */
+        public LazyloaderGraph build() {
+            nodes.forEach((name, node) -> node.dependencies().forEach(dependency -> {
+                if (!nodes.containsKey(dependency)) {
+                    throw new IllegalArgumentException(
+                            format("Loader:%s depends on unknown loader:%s.", name, dependency));
+                }
+            }));
+
+            return new LazyloaderGraph(Map.copyOf(nodes), sortTopologically());
+        }
+
+        private List<String> sortTopologically() {
+            final var pendingDependencies = new HashMap<String, Integer>();
+            final var dependents = new HashMap<String, List<String>>();
+
+            nodes.forEach((name, node) -> {
+                pendingDependencies.put(name, node.dependencies().size());
+                node.dependencies().forEach(dependency ->
+                        dependents.computeIfAbsent(dependency, k -> new ArrayList<>()).add(name));
+            });
+
+            final var ready = new ArrayDeque<String>();
+            pendingDependencies.forEach((name, pending) -> {
+                if (pending == 0) {
+                    ready.add(name);
+                }
+            });
+
+            final var order = new ArrayList<String>(nodes.size());
+            while (!ready.isEmpty()) {
+                final var name = ready.poll();
+                order.add(name);
+                dependents.getOrDefault(name, List.of()).forEach(dependent -> {
+                    if (pendingDependencies.merge(dependent, -1, Integer::sum) == 0) {
+                        ready.add(dependent);
+                    }
+                });
+            }
+
+            if (order.size() != nodes.size()) {
+                final var cyclic = nodes.keySet().stream().filter(name -> !order.contains(name)).toList();
+                throw new IllegalArgumentException(format("Loaders:%s form a dependency cycle.", cyclic));
+            }
+
+            return List.copyOf(order);
+        }
+
+        private final Map<String, Node> nodes;
+    }
+}
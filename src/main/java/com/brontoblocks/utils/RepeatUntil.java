@@ -60,7 +60,10 @@ public class RepeatUntil<T> {
 
         @Override
         public long retry(int numOfTries) {
-            var exponent = 2 ^ numOfTries;
+            var exponent = 1L << Math.min(numOfTries, 62);
+            if (baseMillis > 0 && exponent > cap / baseMillis) {
+                return cap;
+            }
             return Math.min(cap, exponent * baseMillis);
         }
     }
@@ -1,62 +1,188 @@
 package com.brontoblocks.valuecache;
 
+import com.brontoblocks.chrono.TimeKeeper;
+import com.brontoblocks.exception.StaleValueException;
 import com.brontoblocks.utils.Either;
 
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.function.Consumer;
 import java.util.function.Predicate;
 import java.util.function.Supplier;
 
+import static com.brontoblocks.utils.ArgCheck.nonNull;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
 public abstract class ConditionalValueCache<T> {
 
-    protected ConditionalValueCache(T initialValue, Predicate<T> updateCriterion,
-                                    Supplier<T> valueProducer, Consumer<Throwable> exceptionHandler) {
+    protected ConditionalValueCache(T initialValue, Predicate<T> updateCriterion, Supplier<T> valueProducer,
+                                    Consumer<Throwable> exceptionHandler, RefreshPolicy refreshPolicy) {
 
-        this.value = initialValue;
+        this.refreshPolicy = nonNull("refreshPolicy", refreshPolicy);
+        this.timeKeeper = refreshPolicy.getTimeKeeper();
+        this.statsListener = refreshPolicy.getStatsListener();
+        this.isStatsEnabled = statsListener != ValueCacheStatsListener.DISABLED;
+        this.entry = new Entry<>(initialValue, timeKeeper.getNanoTime());
+        this.failureState = null;
         this.updateCriterion = updateCriterion;
         this.valueProducer = valueProducer;
         this.exceptionHandler = exceptionHandler;
         this.isCurrentlyCheckingStatus = false;
     }
 
+    protected ConditionalValueCache(T initialValue, Predicate<T> updateCriterion,
+                                    Supplier<T> valueProducer, Consumer<Throwable> exceptionHandler) {
+        this(initialValue, updateCriterion, valueProducer, exceptionHandler, RefreshPolicy.defaultPolicy());
+    }
+
     protected ConditionalValueCache(T initialValue, Predicate<T> updateCriterion,
                                     Supplier<T> valueProducer) {
         this(initialValue, updateCriterion, valueProducer, ex -> {});
     }
 
     protected T getSavedValue() {
-        return value;
+        return entry.value();
     }
 
+    /**
+     * Returns the cached value, refreshing it first when the update criterion (or the max staleness of the
+     * {@link RefreshPolicy}) requires so. Only a single refresh is in flight at any time. Concurrent callers are
+     * served the current value, unless it has exceeded the max staleness, in which case they wait for the ongoing
+     * refresh to complete and take its outcome: the new value, or (if it failed) whatever the stale-if-error window
+     * allows. Waiters never start a refresh of their own.
+     * @throws StaleValueException if refreshes keep failing for longer than the stale-if-error window.
+     */
     protected T checkForUpdateOrGetCurrentValue() {
 
-        if (!isCurrentlyCheckingStatus) {
-            synchronized (this) {
-                if (!isCurrentlyCheckingStatus) {
-                    isCurrentlyCheckingStatus = true;
-                } else {
-                    return value;
+        if (tryAcquireRefreshPermit()) {
+            boolean hit = true;
+            boolean handedOver = false;
+            try {
+                final var now = timeKeeper.getNanoTime();
+                if (isRefreshAllowed(now) && shouldUpdate(now)) {
+                    if (canRevalidateInBackground(now)) {
+                        handedOver = revalidateInBackground();
+                    }
+
+                    if (!handedOver) {
+                        hit = false;
+                        refresh();
+                    }
+                }
+            } finally {
+                if (!handedOver) {
+                    releaseRefreshPermit();
                 }
             }
+            return serve(hit);
+        }
 
-            try {
+        if (exceedsMaxStaleness(timeKeeper.getNanoTime()) && awaitOngoingRefresh()) {
+            return serve(false);
+        }
+        return serve(true);
+    }
 
-                boolean shouldUpdate = updateCriterion.test(value);
+    /**
+     * Replaces the cached value with one produced outside this cache (e.g. by a batch load), exactly as if a refresh
+     * had just succeeded.
+     */
+    protected void offerValue(T newValue) {
+        entry = new Entry<>(newValue, timeKeeper.getNanoTime());
+        failureState = null;
+    }
 
-                if (shouldUpdate) {
-                    T temp = getNewValue()
-                            .peekIfLeft(exceptionHandler)
-                            .recoverWithValue(value);
+    private boolean shouldUpdate(long now) {
+        return exceedsMaxStaleness(now) || updateCriterion.test(entry.value());
+    }
 
-                    value = temp;
-                    return temp; // Don't inline. One memory lookup less
+    private boolean exceedsMaxStaleness(long now) {
+        return now - entry.producedAtNanos() > refreshPolicy.getMaxStalenessInNanos();
+    }
+
+    private boolean isRefreshAllowed(long now) {
+        final var failure = failureState;
+        return failure == null || now - failure.nextAttemptAtNanos() >= 0L;
+    }
+
+    private boolean canRevalidateInBackground(long now) {
+        return refreshPolicy.getRevalidationExecutor().isPresent() && !exceedsMaxStaleness(now);
+    }
+
+    private boolean revalidateInBackground() {
+        final Executor executor = refreshPolicy.getRevalidationExecutor().orElseThrow();
+        try {
+            executor.execute(() -> {
+                try {
+                    refresh();
+                } finally {
+                    releaseRefreshPermit();
                 }
+            });
+            return true;
+        } catch (RejectedExecutionException ex) {
+            // Executor is saturated. Fall back to refreshing in the caller's thread.
+            return false;
+        }
+    }
 
-            } finally {
-                isCurrentlyCheckingStatus = false;
-            }
+    private void refresh() {
+        final var startedAt = timeKeeper.getNanoTime();
+        final var result = getNewValue();
+        final var now = timeKeeper.getNanoTime();
+
+        if (!result.isLeft()) {
+            entry = new Entry<>(result.getRight(), now);
+            failureState = null;
+            statsListener.onRefreshSucceeded(now - startedAt);
+        } else {
+            failureState = FailureState.next(failureState, result.getLeft(), now, refreshPolicy);
+            statsListener.onRefreshFailed(now - startedAt, result.getLeft());
+            exceptionHandler.accept(result.getLeft());
+        }
+    }
+
+    private T serve(boolean hit) {
+        final var currentEntry = entry;
+        final var failure = failureState;
+
+        if (failure != null
+                && timeKeeper.getNanoTime() - failure.firstFailureAtNanos() > refreshPolicy.getStaleIfErrorInNanos()) {
+            throw new StaleValueException(
+                    "Value refresh has been failing for longer than the stale-if-error window (%d consecutive failures)."
+                            .formatted(failure.consecutiveFailures()), failure.lastFailure());
+        }
+
+        if (isStatsEnabled) {
+            statsListener.onValueServed(timeKeeper.getNanoTime() - currentEntry.producedAtNanos(), hit);
+        }
+
+        return currentEntry.value();
+    }
+
+    private synchronized boolean tryAcquireRefreshPermit() {
+        if (!isCurrentlyCheckingStatus) {
+            isCurrentlyCheckingStatus = true;
+            return true;
         }
+        return false;
+    }
 
-        return value;
+    private synchronized void releaseRefreshPermit() {
+        isCurrentlyCheckingStatus = false;
+        notifyAll();
+    }
+
+    private synchronized boolean awaitOngoingRefresh() {
+        try {
+            while (isCurrentlyCheckingStatus) {
+                wait();
+            }
+            return true;
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
     }
 
     private Either<Throwable, T> getNewValue() {
@@ -67,11 +193,34 @@ public abstract class ConditionalValueCache<T> {
         }
     }
 
-    private volatile T value;
+    private volatile Entry<T> entry;
+    private volatile FailureState failureState;
 
     private final Supplier<T> valueProducer;
     private final Predicate<T> updateCriterion;
     private final Consumer<Throwable> exceptionHandler;
+    private final RefreshPolicy refreshPolicy;
+    private final TimeKeeper timeKeeper;
+    private final ValueCacheStatsListener statsListener;
+    private final boolean isStatsEnabled;
 
     private volatile boolean isCurrentlyCheckingStatus;
-}
\ No newline at end of file
+
+    private record Entry<T>(T value, long producedAtNanos) { }
+
+    private record FailureState(int consecutiveFailures, long firstFailureAtNanos, long nextAttemptAtNanos,
+                                Throwable lastFailure) {
+
+        private static FailureState next(FailureState previous, Throwable failure, long now, RefreshPolicy policy) {
+            final var failures = previous == null ? 1 : previous.consecutiveFailures() + 1;
+            final var firstFailureAt = previous == null ? now : previous.firstFailureAtNanos();
+            final var backoffInNanos = Math.min(
+                    MILLISECONDS.toNanos(policy.getFailureBackoff().retry(failures - 1)), MAX_BACKOFF_IN_NANOS);
+
+            return new FailureState(failures, firstFailureAt, now + backoffInNanos, failure);
+        }
+
+        // Keeps nanoTime differences free of overflow
+        private static final long MAX_BACKOFF_IN_NANOS = Long.MAX_VALUE / 4;
+    }
+}
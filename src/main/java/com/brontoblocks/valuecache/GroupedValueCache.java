@@ -0,0 +1,21 @@
+package com.brontoblocks.valuecache;
+
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * A value cache whose value is refreshed by a {@link ValueCacheGroup}. Readers are always served the latest value
+ * pushed by the group. Only if the group falls behind (the value becomes older than the max staleness derived from
+ * the group's refresh interval), the value is loaded individually by the first reader that notices.
+ */
+public final class GroupedValueCache<T> extends ConditionalValueCache<T> {
+
+    GroupedValueCache(T initialValue, Supplier<T> fallbackProducer, Consumer<Throwable> exceptionHandler,
+                      RefreshPolicy refreshPolicy) {
+        super(initialValue, value -> false, fallbackProducer, exceptionHandler, refreshPolicy);
+    }
+
+    public T getValue() {
+        return this.checkForUpdateOrGetCurrentValue();
+    }
+}
@@ -0,0 +1,176 @@
+package com.brontoblocks.valuecache;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Supplier;
+
+import static com.brontoblocks.utils.ArgCheck.RangeArgCheckMode.INCLUSIVE_INCLUSIVE;
+import static com.brontoblocks.utils.ArgCheck.inRange;
+import static com.brontoblocks.utils.ArgCheck.nonNull;
+import static java.lang.String.format;
+
+/**
+ * A cache which keeps its values serialized in direct memory, outside the java heap. It is meant for large and
+ * rarely changing values (e.g. reference data tables of several megabytes) which would otherwise be promoted to the
+ * old generation and increase the duration of GC pauses. The heap footprint of each entry is limited to its key and a
+ * small {@link ByteBuffer} handle.
+ *
+ * Values are serialized upon {@code put} using the given {@link ValueCodec} and deserialized lazily, on every
+ * {@code get}. Thus, each get returns a new instance which the caller is free to keep or discard. When the total size
+ * of the serialized values exceeds the configured capacity, the least recently used entries are evicted. The direct
+ * memory of an evicted entry is released once its buffer gets garbage collected.
+ *
+ * Note that the maximum direct memory of the JVM is controlled by {@code -XX:MaxDirectMemorySize}, which must be large
+ * enough to accommodate the capacity of all off heap caches.
+ *
+ * This class IS thread safe. Deserialization happens outside the internal lock, so concurrent gets do not block each
+ * other while decoding.
+ * @param <K> The type of the keys, which are kept on heap.
+ * @param <V> The type of the values, which are kept off heap.
+ */
+public final class OffHeapValueCache<K, V> {
+
+    public static <K, V> OffHeapValueCache<K, V> create(long capacityInBytes, ValueCodec<V> codec) {
+        return new OffHeapValueCache<>(
+                inRange("capacityInBytes", capacityInBytes, 1L, Long.MAX_VALUE, INCLUSIVE_INCLUSIVE),
+                nonNull("codec", codec));
+    }
+
+    /**
+     * Serializes and stores the given value, replacing any previous value of the same key.
+     * @throws IllegalArgumentException if the serialized value is larger than the capacity of the cache.
+     */
+    public void put(K key, V value) {
+        nonNull("key", key);
+        final var bytes = codec.encode(nonNull("value", value));
+
+        if (bytes.length > capacityInBytes) {
+            throw new IllegalArgumentException(format(
+                    "Serialized value of %d bytes exceeds the capacity of %d bytes.", bytes.length, capacityInBytes));
+        }
+
+        final var buffer = ByteBuffer.allocateDirect(bytes.length).put(bytes).flip().asReadOnlyBuffer();
+
+        synchronized (this) {
+            final var previous = entries.put(key, buffer);
+            if (previous != null) {
+                sizeInBytes -= previous.capacity();
+            }
+            sizeInBytes += buffer.capacity();
+            evictIfNeeded();
+        }
+    }
+
+    public Optional<V> get(K key) {
+        final ByteBuffer buffer;
+        synchronized (this) {
+            buffer = entries.get(nonNull("key", key));
+        }
+
+        return buffer == null ? Optional.empty() : Optional.of(decode(buffer));
+    }
+
+    /**
+     * Returns the value of the given key. If it is absent, the loader is invoked and its result is stored before
+     * being returned. Concurrent callers might invoke the loader more than once for the same key.
+     */
+    public V get(K key, Supplier<V> loader) {
+        return get(key).orElseGet(() -> {
+            final var value = loader.get();
+            put(key, value);
+            return value;
+        });
+    }
+
+    public synchronized void invalidate(K key) {
+        final var previous = entries.remove(nonNull("key", key));
+        if (previous != null) {
+            sizeInBytes -= previous.capacity();
+        }
+    }
+
+    public synchronized void invalidateAll() {
+        entries.clear();
+        sizeInBytes = 0L;
+    }
+
+    public synchronized long getSizeInBytes() {
+        return sizeInBytes;
+    }
+
+    public synchronized int getEntryCount() {
+        return entries.size();
+    }
+
+    public long getCapacityInBytes() {
+        return capacityInBytes;
+    }
+
+    private void evictIfNeeded() {
+        final Iterator<ByteBuffer> eldestFirst = entries.values().iterator();
+        while (sizeInBytes > capacityInBytes && eldestFirst.hasNext()) {
+            sizeInBytes -= eldestFirst.next().capacity();
+            eldestFirst.remove();
+        }
+    }
+
+    private V decode(ByteBuffer buffer) {
+        return codec.decode(new ByteBufferInputStream(buffer.duplicate()));
+    }
+
+    private OffHeapValueCache(long capacityInBytes, ValueCodec<V> codec) {
+        this.capacityInBytes = capacityInBytes;
+        this.codec = codec;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true);
+        this.sizeInBytes = 0L;
+    }
+
+    private final long capacityInBytes;
+    private final ValueCodec<V> codec;
+    private final Map<K, ByteBuffer> entries;
+    private long sizeInBytes;
+
+    private static final class ByteBufferInputStream extends InputStream {
+
+        private ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) {
+            if (length == 0) {
+                return 0;
+            }
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+
+            final var count = Math.min(length, buffer.remaining());
+            buffer.get(bytes, offset, count);
+            return count;
+        }
+
+        @Override
+        public long skip(long n) {
+            final var count = (int) Math.max(0L, Math.min(n, buffer.remaining()));
+            buffer.position(buffer.position() + count);
+            return count;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+
+        private final ByteBuffer buffer;
+    }
+}
@@ -0,0 +1,160 @@
+package com.brontoblocks.valuecache;
+
+import com.brontoblocks.chrono.TimeKeeper;
+import com.brontoblocks.utils.RepeatUntil.BackoffRetryMechanism;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.Executor;
+
+import static com.brontoblocks.utils.ArgCheck.nonNull;
+import static com.brontoblocks.utils.ArgCheck.noNegativeLong;
+
+/**
+ * Describes how a {@link ConditionalValueCache} behaves when its value needs to be refreshed and when the value
+ * producer is slow or failing. The default policy keeps the historical behaviour: the caller which detects the need
+ * for a refresh performs it synchronously, a failed refresh keeps serving the old value forever and a new refresh is
+ * attempted on the very next call.
+ *
+ * <ul>
+ *     <li>{@code maxStaleness} - The maximum age of a value (since it was produced) that may be served while a
+ *     refresh is pending. Older values are never handed out on the happy path, callers wait for the refresh
+ *     instead.</li>
+ *     <li>{@code staleWhileRevalidate} - Refreshes run on the given executor and every caller (including the one that
+ *     triggered the refresh) is served the current value immediately.</li>
+ *     <li>{@code staleIfError} - Once refreshes start failing the old value is served for at most this window,
+ *     measured from the first failure. Afterwards callers receive a
+ *     {@link com.brontoblocks.exception.StaleValueException} until a refresh succeeds.</li>
+ *     <li>{@code failureBackoff} - The delay in millis between consecutive failing refreshes, given the number of
+ *     failures so far. Calls in between are served from the cache without touching the value producer.</li>
+ *     <li>{@code statsListener} - Receives every hit, miss and refresh of the cache. See {@link ValueCacheStats}.</li>
+ * </ul>
+ *
+ * Usage example
+ * <pre>
+ *   RefreshPolicy.builder()
+ *       .withMaxStaleness(Duration.ofMinutes(5))
+ *       .enableStaleWhileRevalidate(executor)
+ *       .withStaleIfErrorWindow(Duration.ofMinutes(30))
+ *       .withFailureBackoff(CappedExponentialBackoff.of(60_000, 500))
+ *       .build();
+ * </pre>
+ */
+public final class RefreshPolicy {
+
+    public static RefreshPolicy defaultPolicy() {
+        return DEFAULT;
+    }
+
+    public static RefreshPolicyBuilder builder() {
+        return new RefreshPolicyBuilder();
+    }
+
+    public long getMaxStalenessInNanos() {
+        return maxStalenessInNanos;
+    }
+
+    public Optional<Executor> getRevalidationExecutor() {
+        return Optional.ofNullable(revalidationExecutor);
+    }
+
+    public long getStaleIfErrorInNanos() {
+        return staleIfErrorInNanos;
+    }
+
+    public BackoffRetryMechanism getFailureBackoff() {
+        return failureBackoff;
+    }
+
+    public TimeKeeper getTimeKeeper() {
+        return timeKeeper;
+    }
+
+    public ValueCacheStatsListener getStatsListener() {
+        return statsListener;
+    }
+
+    private RefreshPolicy(long maxStalenessInNanos, Executor revalidationExecutor, long staleIfErrorInNanos,
+                          BackoffRetryMechanism failureBackoff, TimeKeeper timeKeeper,
+                          ValueCacheStatsListener statsListener) {
+        this.maxStalenessInNanos = maxStalenessInNanos;
+        this.revalidationExecutor = revalidationExecutor;
+        this.staleIfErrorInNanos = staleIfErrorInNanos;
+        this.failureBackoff = failureBackoff;
+        this.timeKeeper = timeKeeper;
+        this.statsListener = statsListener;
+    }
+
+    private final long maxStalenessInNanos;
+    private final Executor revalidationExecutor;
+    private final long staleIfErrorInNanos;
+    private final BackoffRetryMechanism failureBackoff;
+    private final TimeKeeper timeKeeper;
+    private final ValueCacheStatsListener statsListener;
+
+    private static final long UNBOUNDED = Long.MAX_VALUE;
+    private static final BackoffRetryMechanism NO_BACKOFF = numOfTries -> 0L;
+    private static final RefreshPolicy DEFAULT = builder().build();
+
+    public static final class RefreshPolicyBuilder {
+
+        private RefreshPolicyBuilder() {
+            this.maxStalenessInNanos = UNBOUNDED;
+            this.revalidationExecutor = null;
+            this.staleIfErrorInNanos = UNBOUNDED;
+            this.failureBackoff = NO_BACKOFF;
+            this.timeKeeper = TimeKeeper.createWithRealTimeKeeping();
+            this.statsListener = ValueCacheStatsListener.DISABLED;
+        }
+
+        public RefreshPolicyBuilder withMaxStaleness(Duration maxStaleness) {
+            this.maxStalenessInNanos = toNanos("maxStaleness", maxStaleness);
+            return this;
+        }
+
+        public RefreshPolicyBuilder enableStaleWhileRevalidate(Executor executor) {
+            this.revalidationExecutor = nonNull("executor", executor);
+            return this;
+        }
+
+        public RefreshPolicyBuilder withStaleIfErrorWindow(Duration window) {
+            this.staleIfErrorInNanos = toNanos("window", window);
+            return this;
+        }
+
+        public RefreshPolicyBuilder withFailureBackoff(BackoffRetryMechanism backoff) {
+            this.failureBackoff = nonNull("backoff", backoff);
+            return this;
+        }
+
+        public RefreshPolicyBuilder withTimeKeeper(TimeKeeper timeKeeper) {
+            this.timeKeeper = nonNull("timeKeeper", timeKeeper);
+            return this;
+        }
+
+        /**
+         * Enables stats recording. Stats are disabled by default, in which case the cache does not pay for any extra
+         * clock reads on the read path.
+         */
+        public RefreshPolicyBuilder withStatsListener(ValueCacheStatsListener statsListener) {
+            this.statsListener = nonNull("statsListener", statsListener);
+            return this;
+        }
+
+        public RefreshPolicy build() {
+            return new RefreshPolicy(maxStalenessInNanos, revalidationExecutor, staleIfErrorInNanos, failureBackoff,
+                    timeKeeper, statsListener);
+        }
+
+        private static long toNanos(String argName, Duration duration) {
+            return noNegativeLong(argName, nonNull(argName, duration).toNanos());
+        }
+
+        private long maxStalenessInNanos;
+        private Executor revalidationExecutor;
+        private long staleIfErrorInNanos;
+        private BackoffRetryMechanism failureBackoff;
+        private TimeKeeper timeKeeper;
+        private ValueCacheStatsListener statsListener;
+    }
+}
@@ -16,12 +16,22 @@ public class TimeIntervalValueCache<T> extends ConditionalValueCache<T2<T, Insta
         return new TimeIntervalValueCache<>(
                 t2(initialValue, Instant.now()),
                 getPredicateIntervalInSeconds(minMillisInterval),
-                () -> t2(valueProducer.get(), Instant.now()), exceptionHandler);
+                () -> t2(valueProducer.get(), Instant.now()), exceptionHandler, RefreshPolicy.defaultPolicy());
+    }
+
+    public static <T> TimeIntervalValueCache<T> create(T initialValue, long minMillisInterval,
+                                                       Supplier<T> valueProducer, Consumer<Throwable> exceptionHandler,
+                                                       RefreshPolicy refreshPolicy) {
+        return new TimeIntervalValueCache<>(
+                t2(initialValue, Instant.now()),
+                getPredicateIntervalInSeconds(minMillisInterval),
+                () -> t2(valueProducer.get(), Instant.now()), exceptionHandler, refreshPolicy);
     }
 
     private TimeIntervalValueCache(T2<T, Instant> initialValue, Predicate<T2<T, Instant>> updateCriterion,
-                                   Supplier<T2<T, Instant>> valueProducer, Consumer<Throwable> exceptionHandler) {
-        super(initialValue, updateCriterion, valueProducer, exceptionHandler);
+                                   Supplier<T2<T, Instant>> valueProducer, Consumer<Throwable> exceptionHandler,
+                                   RefreshPolicy refreshPolicy) {
+        super(initialValue, updateCriterion, valueProducer, exceptionHandler, refreshPolicy);
     }
 
     public T getValue() {
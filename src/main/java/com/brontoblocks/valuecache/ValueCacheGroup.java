@@ -0,0 +1,311 @@
+package com.brontoblocks.valuecache;
+
+import com.brontoblocks.utils.RepeatUntil.BackoffRetryMechanism;
+import com.brontoblocks.utils.RepeatUntil.CappedExponentialBackoff;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import static com.brontoblocks.thread.ThreadUtils.newDaemonThread;
+import static com.brontoblocks.utils.ArgCheck.RangeArgCheckMode.INCLUSIVE_INCLUSIVE;
+import static com.brontoblocks.utils.ArgCheck.inRange;
+import static com.brontoblocks.utils.ArgCheck.noNegativeLong;
+import static com.brontoblocks.utils.ArgCheck.nonNull;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+/**
+ * Coordinates the refreshes of many value caches which are backed by the same backend(s). Instead of every cache
+ * refreshing on its own schedule, and thus producing bursts of requests at interval boundaries, caches are registered
+ * to the group along with a {@link BulkLoader}. All caches sharing the same loader are then refreshed together:
+ *
+ * <ul>
+ *     <li>Schedules are aligned to multiples of the refresh interval (wall clock based), so that all caches of a loader
+ *     become due at the same time and can be batched.</li>
+ *     <li>Each loader is shifted by a random jitter, so that different loaders (and different processes using the same
+ *     loader) do not hit their backends at exactly the same instant.</li>
+ *     <li>The keys of a loader are loaded with as few bulk calls as possible, respecting the max batch size.</li>
+ *     <li>Bulk calls run on a bounded thread pool, every batch as a separate task. A loader whose previous refresh is
+ *     still in flight skips the current tick instead of piling up requests.</li>
+ * </ul>
+ *
+ * A cache only loads its key individually when the group falls behind. Failing individual loads (including keys the
+ * loader returns no value for) are retried with the member failure backoff, capped to the refresh interval by default,
+ * and the previous value keeps being served in the meantime.
+ *
+ * Usage example
+ * <pre>
+ *   var group = ValueCacheGroup.builder(Duration.ofMinutes(1))
+ *       .withJitter(Duration.ofSeconds(10))
+ *       .withMaxConcurrentLoads(4)
+ *       .build();
+ *
+ *   BulkLoader&lt;String, Rate&gt; ratesLoader = currencies -&gt; ratesClient.fetch(currencies);
+ *   GroupedValueCache&lt;Rate&gt; eur = group.register(ratesLoader, "EUR", Rate.UNKNOWN);
+ *   GroupedValueCache&lt;Rate&gt; usd = group.register(ratesLoader, "USD", Rate.UNKNOWN);
+ * </pre>
+ *
+ * This class IS thread safe.
+ */
+public final class ValueCacheGroup implements AutoCloseable {
+
+    public static ValueCacheGroupBuilder builder(Duration refreshInterval) {
+        final var intervalInMillis = nonNull("refreshInterval", refreshInterval).toMillis();
+        return new ValueCacheGroupBuilder(inRange("refreshInterval", intervalInMillis, 1L, Long.MAX_VALUE / 4,
+                INCLUSIVE_INCLUSIVE));
+    }
+
+    /**
+     * Registers a new cache for the given key. Its value gets refreshed along with every other key of the same loader
+     * (loaders are matched by identity).
+     */
+    public <K, V> GroupedValueCache<V> register(BulkLoader<K, V> loader, K key, V initialValue) {
+        nonNull("loader", loader);
+        nonNull("key", key);
+
+        if (isClosed.get()) {
+            throw new IllegalStateException("ValueCacheGroup is closed.");
+        }
+
+        final var loaderGroup = loaderGroupOf(loader);
+
+        final var cache = new GroupedValueCache<>(initialValue, () -> loadSingle(loader, key), exceptionHandler,
+                RefreshPolicy.builder()
+                        .withMaxStaleness(Duration.ofMillis(2 * refreshIntervalInMillis + jitterInMillis))
+                        .withFailureBackoff(memberFailureBackoff)
+                        .build());
+
+        loaderGroup.members.compute(key, (k, v) -> {
+            if (v == null) {
+                return cache;
+            } else {
+                throw new IllegalStateException("Key: %s already registered for this loader.".formatted(key));
+            }
+        });
+
+        return cache;
+    }
+
+    @Override
+    public void close() {
+        if (isClosed.compareAndSet(false, true)) {
+            scheduler.shutdownNow();
+            loadExecutor.shutdown();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private <K, V> LoaderGroup<K, V> loaderGroupOf(BulkLoader<K, V> loader) {
+        final var existing = (LoaderGroup<K, V>) loaderGroups.get(loader);
+        if (existing != null) {
+            return existing;
+        }
+
+        final var newGroup = new LoaderGroup<>(loader);
+        final var concurrentGroup = (LoaderGroup<K, V>) loaderGroups.putIfAbsent(loader, newGroup);
+        if (concurrentGroup != null) {
+            return concurrentGroup;
+        }
+
+        // Scheduled outside of the map's mapping functions, only by the thread whose group made it into the map
+        scheduleRefreshes(newGroup);
+        return newGroup;
+    }
+
+    private void scheduleRefreshes(LoaderGroup<?, ?> loaderGroup) {
+        final var untilNextBoundary = refreshIntervalInMillis - System.currentTimeMillis() % refreshIntervalInMillis;
+        final var jitter = jitterInMillis == 0 ? 0L : ThreadLocalRandom.current().nextLong(jitterInMillis);
+
+        scheduler.scheduleAtFixedRate(() -> submitRefresh(loaderGroup),
+                untilNextBoundary + jitter, refreshIntervalInMillis, MILLISECONDS);
+    }
+
+    private <K, V> void submitRefresh(LoaderGroup<K, V> loaderGroup) {
+        if (!loaderGroup.isRefreshInFlight.compareAndSet(false, true)) {
+            return;
+        }
+
+        final var batches = batchesOf(loaderGroup);
+        if (batches.isEmpty()) {
+            loaderGroup.isRefreshInFlight.set(false);
+            return;
+        }
+
+        final var pendingBatches = new AtomicInteger(batches.size());
+
+        // Every batch is a task of its own, so that the batches of a loader are loaded concurrently
+        for (int i = 0; i < batches.size(); i++) {
+            final var batch = batches.get(i);
+            try {
+                loadExecutor.execute(() -> {
+                    try {
+                        load(loaderGroup, batch);
+                    } finally {
+                        if (pendingBatches.decrementAndGet() == 0) {
+                            loaderGroup.isRefreshInFlight.set(false);
+                        }
+                    }
+                });
+            } catch (RejectedExecutionException ex) {
+                if (pendingBatches.addAndGet(-(batches.size() - i)) == 0) {
+                    loaderGroup.isRefreshInFlight.set(false);
+                }
+                return;
+            }
+        }
+    }
+
+    private <K, V> List<Set<K>> batchesOf(LoaderGroup<K, V> loaderGroup) {
+        final var keys = new ArrayList<>(loaderGroup.members.keySet());
+        final var batches = new ArrayList<Set<K>>();
+
+        for (int from = 0; from < keys.size(); from += maxBatchSize) {
+            batches.add(Set.copyOf(keys.subList(from, Math.min(keys.size(), from + maxBatchSize))));
+        }
+        return batches;
+    }
+
+    private <K, V> void load(LoaderGroup<K, V> loaderGroup, Set<K> batch) {
+        try {
+            final var values = loaderGroup.loader.load(batch);
+            values.forEach((key, value) -> {
+                final var member = loaderGroup.members.get(key);
+                if (member != null) {
+                    member.offerValue(value);
+                }
+            });
+        } catch (Throwable ex) {
+            exceptionHandler.accept(ex);
+        }
+    }
+
+    private static <K, V> V loadSingle(BulkLoader<K, V> loader, K key) {
+        final var value = loader.load(Set.of(key)).get(key);
+        if (value == null) {
+            throw new IllegalStateException("Bulk loader returned no value for key: %s".formatted(key));
+        }
+        return value;
+    }
+
+    private ValueCacheGroup(long refreshIntervalInMillis, long jitterInMillis, int maxConcurrentLoads,
+                            int maxBatchSize, BackoffRetryMechanism memberFailureBackoff,
+                            Consumer<Throwable> exceptionHandler) {
+
+        final var threadCounter = new AtomicInteger();
+
+        this.refreshIntervalInMillis = refreshIntervalInMillis;
+        this.jitterInMillis = jitterInMillis;
+        this.maxBatchSize = maxBatchSize;
+        this.memberFailureBackoff = memberFailureBackoff;
+        this.exceptionHandler = exceptionHandler;
+        this.loaderGroups = new ConcurrentHashMap<>();
+        this.isClosed = new AtomicBoolean(false);
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(
+                r -> newDaemonThread("value-cache-group-scheduler", r));
+        this.loadExecutor = new ThreadPoolExecutor(maxConcurrentLoads, maxConcurrentLoads, 20L, SECONDS,
+                new LinkedBlockingQueue<>(),
+                r -> newDaemonThread("value-cache-group-loader-" + threadCounter.incrementAndGet(), r));
+        this.loadExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    private final long refreshIntervalInMillis;
+    private final long jitterInMillis;
+    private final int maxBatchSize;
+    private final BackoffRetryMechanism memberFailureBackoff;
+    private final Consumer<Throwable> exceptionHandler;
+    private final Map<BulkLoader<?, ?>, LoaderGroup<?, ?>> loaderGroups;
+    private final AtomicBoolean isClosed;
+    private final ScheduledExecutorService scheduler;
+    private final ThreadPoolExecutor loadExecutor;
+
+    private static final class LoaderGroup<K, V> {
+
+        private LoaderGroup(BulkLoader<K, V> loader) {
+            this.loader = loader;
+            this.members = new ConcurrentHashMap<>();
+            this.isRefreshInFlight = new AtomicBoolean(false);
+        }
+
+        private final BulkLoader<K, V> loader;
+        private final Map<K, GroupedValueCache<V>> members;
+        private final AtomicBoolean isRefreshInFlight;
+    }
+
+    /**
+     * Loads the values of many keys with a single call to the backend. Keys missing from the returned map keep their
+     * previous value.
+     */
+    @FunctionalInterface
+    public interface BulkLoader<K, V> {
+        Map<K, V> load(Set<K> keys);
+    }
+
+    public static final class ValueCacheGroupBuilder {
+
+        private ValueCacheGroupBuilder(long refreshIntervalInMillis) {
+            this.refreshIntervalInMillis = refreshIntervalInMillis;
+            this.jitterInMillis = 0L;
+            this.maxConcurrentLoads = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+            this.maxBatchSize = Integer.MAX_VALUE;
+            this.memberFailureBackoff = CappedExponentialBackoff.of(
+                    refreshIntervalInMillis, Math.max(1L, refreshIntervalInMillis / 16));
+            this.exceptionHandler = ex -> {};
+        }
+
+        public ValueCacheGroupBuilder withJitter(Duration jitter) {
+            this.jitterInMillis = noNegativeLong("jitter", nonNull("jitter", jitter).toMillis());
+            return this;
+        }
+
+        public ValueCacheGroupBuilder withMaxConcurrentLoads(int maxConcurrentLoads) {
+            this.maxConcurrentLoads = inRange("maxConcurrentLoads", maxConcurrentLoads, 1, Integer.MAX_VALUE,
+                    INCLUSIVE_INCLUSIVE);
+            return this;
+        }
+
+        public ValueCacheGroupBuilder withMaxBatchSize(int maxBatchSize) {
+            this.maxBatchSize = inRange("maxBatchSize", maxBatchSize, 1, Integer.MAX_VALUE, INCLUSIVE_INCLUSIVE);
+            return this;
+        }
+
+        /**
+         * The delay in millis between consecutive failing individual loads of a cache, given the number of failures so
+         * far. Defaults to an exponential backoff capped to the refresh interval.
+         */
+        public ValueCacheGroupBuilder withMemberFailureBackoff(BackoffRetryMechanism memberFailureBackoff) {
+            this.memberFailureBackoff = nonNull("memberFailureBackoff", memberFailureBackoff);
+            return this;
+        }
+
+        public ValueCacheGroupBuilder withExceptionHandler(Consumer<Throwable> exceptionHandler) {
+            this.exceptionHandler = nonNull("exceptionHandler", exceptionHandler);
+            return this;
+        }
+
+        public ValueCacheGroup build() {
+            return new ValueCacheGroup(
+                    refreshIntervalInMillis, jitterInMillis, maxConcurrentLoads, maxBatchSize, memberFailureBackoff,
+                    exceptionHandler);
+        }
+
+        private final long refreshIntervalInMillis;
+        private long jitterInMillis;
+        private int maxConcurrentLoads;
+        private int maxBatchSize;
+        private BackoffRetryMechanism memberFailureBackoff;
+        private Consumer<Throwable> exceptionHandler;
+    }
+}
@@ -0,0 +1,118 @@
+package com.brontoblocks.valuecache;
+
+import com.brontoblocks.utils.LatencyHistogram;
+
+import java.util.List;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import static com.brontoblocks.utils.ArgCheck.nonNull;
+
+/**
+ * Records the activity of one or more value caches. Counters are backed by {@link LongAdder} so that recording does
+ * not become a point of contention for heavily read caches. Additional listeners can be provided upon creation, in
+ * which case every event is forwarded to them as well (e.g. for exporting to a metrics registry).
+ *
+ * Usage example
+ * <pre>
+ *   var stats = ValueCacheStats.create();
+ *   var cache = TimeIntervalValueCache.create(initial, 60_000, producer, handler,
+ *       RefreshPolicy.builder().withStatsListener(stats).build());
+ *   ...
+ *   ValueCacheStats.Snapshot snapshot = stats.snapshot();
+ * </pre>
+ *
+ * This class IS thread safe.
+ */
+public final class ValueCacheStats implements ValueCacheStatsListener {
+
+    public static ValueCacheStats create(ValueCacheStatsListener... listeners) {
+        return new ValueCacheStats(List.of(nonNull("listeners", listeners)));
+    }
+
+    @Override
+    public void onValueServed(long ageInNanos, boolean hit) {
+        if (hit) {
+            hits.increment();
+        } else {
+            misses.increment();
+        }
+        servedAgeSum.add(ageInNanos);
+        maxServedAge.accumulate(ageInNanos);
+
+        for (ValueCacheStatsListener listener : listeners) {
+            listener.onValueServed(ageInNanos, hit);
+        }
+    }
+
+    @Override
+    public void onRefreshSucceeded(long latencyInNanos) {
+        refreshLatency.record(latencyInNanos);
+
+        for (ValueCacheStatsListener listener : listeners) {
+            listener.onRefreshSucceeded(latencyInNanos);
+        }
+    }
+
+    @Override
+    public void onRefreshFailed(long latencyInNanos, Throwable failure) {
+        failures.increment();
+        refreshLatency.record(latencyInNanos);
+
+        for (ValueCacheStatsListener listener : listeners) {
+            listener.onRefreshFailed(latencyInNanos, failure);
+        }
+    }
+
+    public Snapshot snapshot() {
+        final var hitCount = hits.sum();
+        final var missCount = misses.sum();
+        final var served = hitCount + missCount;
+        final var latency = refreshLatency.snapshot();
+
+        return new Snapshot(
+                hitCount,
+                missCount,
+                latency.count(),
+                failures.sum(),
+                latency,
+                served == 0 ? 0L : servedAgeSum.sum() / served,
+                maxServedAge.get());
+    }
+
+    private ValueCacheStats(List<ValueCacheStatsListener> listeners) {
+        this.listeners = listeners;
+        this.hits = new LongAdder();
+        this.misses = new LongAdder();
+        this.failures = new LongAdder();
+        this.servedAgeSum = new LongAdder();
+        this.maxServedAge = new LongAccumulator(Math::max, 0L);
+        this.refreshLatency = LatencyHistogram.create();
+    }
+
+    private final List<ValueCacheStatsListener> listeners;
+    private final LongAdder hits;
+    private final LongAdder misses;
+    private final LongAdder failures;
+    private final LongAdder servedAgeSum;
+    private final LongAccumulator maxServedAge;
+    private final LatencyHistogram refreshLatency;
+
+    /**
+     * @param refreshCount Includes both successful and failed refreshes.
+     */
+    public record Snapshot(
+            long hitCount,
+            long missCount,
+            long refreshCount,
+            long failureCount,
+            LatencyHistogram.Snapshot refreshLatency,
+            long meanServedAgeInNanos,
+            long maxServedAgeInNanos) {
+
+        public double hitRatio() {
+            final var served = hitCount + missCount;
+            return served == 0 ? 1.0 : hitCount / (double) served;
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package com.brontoblocks.valuecache;
+
+/**
+ * A hook which gets notified about the activity of a {@link ConditionalValueCache}. It can be used to export cache
+ * metrics to any monitoring system. Implementations are invoked from the threads calling the cache (or from the
+ * revalidation executor for background refreshes), so they should be cheap and MUST be thread safe.
+ *
+ * {@link ValueCacheStats} is the implementation provided by this library which keeps counters and a refresh latency
+ * histogram in memory.
+ */
+public interface ValueCacheStatsListener {
+
+    ValueCacheStatsListener DISABLED = new ValueCacheStatsListener() { };
+
+    /**
+     * @param ageInNanos The time elapsed since the served value was produced.
+     * @param hit True if the value was served without the caller waiting for the value producer.
+     */
+    default void onValueServed(long ageInNanos, boolean hit) { }
+
+    default void onRefreshSucceeded(long latencyInNanos) { }
+
+    default void onRefreshFailed(long latencyInNanos, Throwable failure) { }
+}
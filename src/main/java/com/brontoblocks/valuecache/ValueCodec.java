@@ -0,0 +1,40 @@
+package com.brontoblocks.valuecache;
+
+import com.brontoblocks.json.JsonEngine;
+
+import java.io.InputStream;
+
+import static com.brontoblocks.utils.ArgCheck.nonNull;
+
+/**
+ * Converts values to bytes and back, so that they can be stored outside the java heap.
+ * Implementations MUST be thread safe.
+ * @param <T> The type of the values being converted.
+ */
+public interface ValueCodec<T> {
+
+    static <T> ValueCodec<T> json(JsonEngine jsonEngine, Class<T> clazz) {
+        nonNull("jsonEngine", jsonEngine);
+        nonNull("clazz", clazz);
+
+        return new ValueCodec<>() {
+            @Override
+            public byte[] encode(T value) {
+                return jsonEngine.encodeToBytes(value);
+            }
+
+            @Override
+            public T decode(InputStream inputStream) {
+                return jsonEngine.decode(inputStream, clazz);
+            }
+        };
+    }
+
+    byte[] encode(T value);
+
+    /**
+     * @param inputStream A stream over the bytes previously produced by {@link #encode(Object)}. It should not be
+     *                    retained after this method returns.
+     */
+    T decode(InputStream inputStream);
+}
@@ -0,0 +1,20 @@
+package com.brontoblocks.web;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * The asynchronous counterpart of {@link WebRequest}: the request is in flight and no thread is blocked waiting for
+ * its response. See {@link WebResponseHandler#executeAsync(AsyncWebRequest)}.
+ */
+public class AsyncWebRequest {
+
+  AsyncWebRequest(CompletableFuture<ParsedWebResponse> webResponseFuture) {
+    this.parsedWebResponseFuture = webResponseFuture;
+  }
+
+  protected CompletableFuture<ParsedWebResponse> get() {
+    return parsedWebResponseFuture;
+  }
+
+  private final CompletableFuture<ParsedWebResponse> parsedWebResponseFuture;
+}
@@ -0,0 +1,393 @@
+package com.brontoblocks.web;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpResponse.BodyHandler;
+import java.net.http.HttpResponse.BodySubscriber;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Flow;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+import javax.net.ssl.SSLSession;
+
+/**
+ * Decompresses a gzip or deflate encoded response body as it arrives and passes the decompressed buffers on to the
+ * actual subscriber. Hence, any {@link ResponseBody} mode (and String bodies) receives the decoded content without the
+ * compressed body ever being buffered as a whole.
+ *
+ * Deflate bodies are accepted both in zlib format (as RFC 9110 mandates) and raw, as some servers send them.
+ * gzip bodies are verified against their trailer (CRC-32 and size). Only the first member of a multi-member gzip
+ * body is decoded.
+ *
+ * The headers of a decoded response describe the decoded body: Content-Encoding and Content-Length (the length of the
+ * compressed body) are removed, see {@link #decoded(HttpResponse)}.
+ */
+final class DecompressingBodySubscriber<T> implements BodySubscriber<T> {
+
+  /**
+   * Wraps the given handler, so that the bodies of responses with a supported Content-Encoding are decompressed.
+   */
+  static <T> BodyHandler<T> decompressing(BodyHandler<T> bodyHandler) {
+    return responseInfo -> switch (contentEncodingOf(responseInfo.headers())) {
+      case GZIP, X_GZIP -> new DecompressingBodySubscriber<>(bodyHandler.apply(responseInfo), true);
+      case DEFLATE -> new DecompressingBodySubscriber<>(bodyHandler.apply(responseInfo), false);
+      default -> bodyHandler.apply(responseInfo);
+    };
+  }
+
+  /**
+   * @return The given response, with the headers of the encoding removed if its body was decompressed by a handler
+   * returned by {@link #decompressing(BodyHandler)}.
+   */
+  static <T> HttpResponse<T> decoded(HttpResponse<T> response) {
+    return switch (contentEncodingOf(response.headers())) {
+      case GZIP, X_GZIP, DEFLATE -> new DecodedResponse<>(response);
+      default -> response;
+    };
+  }
+
+  @Override
+  public void onSubscribe(Flow.Subscription subscription) {
+    this.subscription = subscription;
+
+    // Cancelling the body (e.g. closing its input stream early) releases the inflater as well
+    downstream.onSubscribe(new Flow.Subscription() {
+      @Override
+      public void request(long n) {
+        subscription.request(n);
+      }
+
+      @Override
+      public void cancel() {
+        subscription.cancel();
+        release();
+      }
+    });
+  }
+
+  @Override
+  public void onNext(List<ByteBuffer> items) {
+    final var decompressed = new ArrayList<ByteBuffer>();
+    synchronized (this) {
+      if (isFailed || isReleased) {
+        return;
+      }
+
+      try {
+        for (final var item : items) {
+          decompress(item, decompressed);
+        }
+      } catch (ZipException | DataFormatException ex) {
+        isFailed = true;
+        subscription.cancel();
+        release();
+        downstream.onError(ex);
+        return;
+      }
+    }
+
+    // Every item requested by the downstream subscriber must be answered by an item, hence ask for more input when
+    // this one produced no output (e.g. a chunk of the gzip header).
+    if (decompressed.isEmpty()) {
+      subscription.request(1);
+    } else {
+      downstream.onNext(decompressed);
+    }
+  }
+
+  @Override
+  public void onError(Throwable throwable) {
+    release();
+    if (!isFailed) {
+      downstream.onError(throwable);
+    }
+  }
+
+  @Override
+  public void onComplete() {
+    release();
+    if (isFailed) {
+      return;
+    }
+
+    // Empty bodies (e.g. responses to HEAD requests) carry the encoding header without any content
+    if (hasReceivedContent && !isFinished()) {
+      downstream.onError(new EOFException("Unexpected end of %s encoded body".formatted(isGzip ? GZIP : DEFLATE)));
+    } else {
+      downstream.onComplete();
+    }
+  }
+
+  @Override
+  public CompletionStage<T> getBody() {
+    return downstream.getBody();
+  }
+
+  private void decompress(ByteBuffer input, List<ByteBuffer> output) throws ZipException, DataFormatException {
+    hasReceivedContent |= input.hasRemaining();
+
+    while (input.hasRemaining()) {
+      if (inflater == null && !readHeader(input, output)) {
+        return;
+      }
+
+      if (!inflater.finished()) {
+        inflater.setInput(input);
+        inflate(output);
+      }
+
+      if (inflater.finished()) {
+        readTrailer(input);
+      }
+    }
+  }
+
+  private boolean readHeader(ByteBuffer input, List<ByteBuffer> output) throws ZipException, DataFormatException {
+    while (input.hasRemaining()) {
+      header.write(input.get());
+      final var headerBytes = header.toByteArray();
+
+      if (isGzip && gzipHeaderLength(headerBytes) == headerBytes.length) {
+        inflater = new Inflater(true);
+        crc = new CRC32();
+        return true;
+      }
+
+      if (!isGzip && headerBytes.length == ZLIB_HEADER_LENGTH) {
+        // The zlib header is part of the stream, whereas raw deflate streams have no header at all
+        inflater = new Inflater(!isZlibHeader(headerBytes));
+        inflater.setInput(headerBytes);
+        inflate(output);
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private void inflate(List<ByteBuffer> output) throws DataFormatException, ZipException {
+    while (!inflater.finished() && !inflater.needsInput()) {
+      final var chunk = ByteBuffer.allocate(CHUNK_SIZE);
+      final var written = inflater.inflate(chunk);
+
+      if (written > 0) {
+        chunk.flip();
+        if (crc != null) {
+          crc.update(chunk.duplicate());
+        }
+        output.add(chunk);
+      } else if (inflater.needsDictionary()) {
+        throw new ZipException("Preset dictionaries are not supported");
+      }
+    }
+  }
+
+  private void readTrailer(ByteBuffer input) throws ZipException {
+    if (!isGzip) {
+      input.position(input.limit());
+      return;
+    }
+
+    while (input.hasRemaining() && trailerLength < trailer.length) {
+      trailer[trailerLength++] = input.get();
+      if (trailerLength == trailer.length) {
+        verifyTrailer();
+      }
+    }
+
+    // Anything after the trailer (i.e. further gzip members) is ignored
+    input.position(input.limit());
+  }
+
+  private void verifyTrailer() throws ZipException {
+    if (readIntLE(trailer, 0) != (int) crc.getValue()) {
+      throw new ZipException("Corrupt gzip body (CRC-32 mismatch)");
+    }
+    if (readIntLE(trailer, 4) != (int) inflater.getBytesWritten()) {
+      throw new ZipException("Corrupt gzip body (size mismatch)");
+    }
+  }
+
+  private synchronized boolean isFinished() {
+    return inflater != null && inflater.finished() && (!isGzip || trailerLength == trailer.length);
+  }
+
+  private synchronized void release() {
+    if (!isReleased) {
+      isReleased = true;
+      if (inflater != null) {
+        inflater.end();
+      }
+    }
+  }
+
+  private static String contentEncodingOf(HttpHeaders headers) {
+    return headers.firstValue(CONTENT_ENCODING)
+      .map(encoding -> encoding.trim().toLowerCase(Locale.ROOT))
+      .orElse(IDENTITY);
+  }
+
+  /**
+   * @return The length of the gzip header (RFC 1952), or -1 if more bytes are needed to determine it.
+   */
+  private static int gzipHeaderLength(byte[] header) throws ZipException {
+    if (header.length < GZIP_FIXED_HEADER_LENGTH) {
+      return -1;
+    }
+    if ((header[0] & 0xFF) != GZIP_MAGIC_1 || (header[1] & 0xFF) != GZIP_MAGIC_2) {
+      throw new ZipException("Not in gzip format");
+    }
+    if (header[2] != DEFLATE_COMPRESSION_METHOD) {
+      throw new ZipException("Unsupported gzip compression method");
+    }
+
+    final var flags = header[3];
+    var length = GZIP_FIXED_HEADER_LENGTH;
+
+    if ((flags & FEXTRA) != 0) {
+      if (header.length < length + 2) {
+        return -1;
+      }
+      length += 2 + ((header[length] & 0xFF) | (header[length + 1] & 0xFF) << 8);
+    }
+    if ((flags & FNAME) != 0) {
+      length = skipZeroTerminated(header, length);
+    }
+    if (length >= 0 && (flags & FCOMMENT) != 0) {
+      length = skipZeroTerminated(header, length);
+    }
+    if (length >= 0 && (flags & FHCRC) != 0) {
+      length += 2;
+    }
+
+    return length >= 0 && header.length >= length ? length : -1;
+  }
+
+  private static int skipZeroTerminated(byte[] header, int from) {
+    for (var i = from; i < header.length; i++) {
+      if (header[i] == 0) {
+        return i + 1;
+      }
+    }
+    return -1;
+  }
+
+  private static boolean isZlibHeader(byte[] header) {
+    final var cmf = header[0] & 0xFF;
+    final var flg = header[1] & 0xFF;
+    return (cmf & 0x0F) == DEFLATE_COMPRESSION_METHOD && (cmf >> 4) <= 7 && ((cmf << 8) | flg) % 31 == 0;
+  }
+
+  private static int readIntLE(byte[] bytes, int offset) {
+    return (bytes[offset] & 0xFF)
+      | (bytes[offset + 1] & 0xFF) << 8
+      | (bytes[offset + 2] & 0xFF) << 16
+      | (bytes[offset + 3] & 0xFF) << 24;
+  }
+
+  private DecompressingBodySubscriber(BodySubscriber<T> downstream, boolean isGzip) {
+    this.downstream = downstream;
+    this.isGzip = isGzip;
+    this.header = new ByteArrayOutputStream();
+    this.trailer = new byte[GZIP_TRAILER_LENGTH];
+  }
+
+  private final BodySubscriber<T> downstream;
+  private final boolean isGzip;
+  private final ByteArrayOutputStream header;
+  private final byte[] trailer;
+  private Flow.Subscription subscription;
+  private Inflater inflater;
+  private CRC32 crc;
+  private int trailerLength;
+  private boolean hasReceivedContent;
+  private boolean isFailed;
+  private boolean isReleased;
+
+  static final String CONTENT_ENCODING = "Content-Encoding";
+  private static final String CONTENT_LENGTH = "Content-Length";
+  static final String GZIP = "gzip";
+  static final String DEFLATE = "deflate";
+  static final String ACCEPTED_ENCODINGS = GZIP + ", " + DEFLATE;
+  private static final String X_GZIP = "x-gzip";
+  private static final String IDENTITY = "identity";
+
+  private static final int CHUNK_SIZE = 16 * 1024;
+  private static final int ZLIB_HEADER_LENGTH = 2;
+  private static final int GZIP_FIXED_HEADER_LENGTH = 10;
+  private static final int GZIP_TRAILER_LENGTH = 8;
+  private static final int GZIP_MAGIC_1 = 0x1F;
+  private static final int GZIP_MAGIC_2 = 0x8B;
+  private static final int DEFLATE_COMPRESSION_METHOD = 8;
+  private static final int FHCRC = 0x02;
+  private static final int FEXTRA = 0x04;
+  private static final int FNAME = 0x08;
+  private static final int FCOMMENT = 0x10;
+
+  /**
+   * A response whose body has been decompressed, hence its headers no longer describe an encoded body.
+   */
+  private static final class DecodedResponse<T> implements HttpResponse<T> {
+
+    @Override
+    public int statusCode() {
+      return response.statusCode();
+    }
+
+    @Override
+    public HttpRequest request() {
+      return response.request();
+    }
+
+    @Override
+    public Optional<HttpResponse<T>> previousResponse() {
+      return response.previousResponse();
+    }
+
+    @Override
+    public HttpHeaders headers() {
+      return headers;
+    }
+
+    @Override
+    public T body() {
+      return response.body();
+    }
+
+    @Override
+    public Optional<SSLSession> sslSession() {
+      return response.sslSession();
+    }
+
+    @Override
+    public URI uri() {
+      return response.uri();
+    }
+
+    @Override
+    public HttpClient.Version version() {
+      return response.version();
+    }
+
+    private DecodedResponse(HttpResponse<T> response) {
+      this.response = response;
+      this.headers = HttpHeaders.of(response.headers().map(),
+        (name, value) -> !name.equalsIgnoreCase(CONTENT_ENCODING) && !name.equalsIgnoreCase(CONTENT_LENGTH));
+    }
+
+    private final HttpResponse<T> response;
+    private final HttpHeaders headers;
+  }
+}
@@ -0,0 +1,505 @@
+package com.brontoblocks.web;
+
+import com.brontoblocks.chrono.TimeKeeper;
+import com.brontoblocks.utils.RandomSource;
+import com.brontoblocks.web.WebClient.HttpHeader;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+import static com.brontoblocks.utils.ArgCheck.RangeArgCheckMode.INCLUSIVE_INCLUSIVE;
+import static com.brontoblocks.utils.ArgCheck.inRange;
+import static com.brontoblocks.utils.ArgCheck.nonNull;
+import static java.lang.Integer.MAX_VALUE;
+
+/**
+ * Spreads requests over a set of equivalent endpoints (e.g. the replicas of a service), favouring the least loaded
+ * ones and avoiding the unhealthy ones, which keeps tail latency low when some replicas slow down or fail.
+ *
+ * Endpoints are chosen by one of the following strategies:
+ * <ul>
+ *     <li>{@link BalancingStrategy#POWER_OF_TWO_CHOICES} (default): picks two endpoints at random and uses the one
+ *     with the lower cost, i.e. (requests in flight + 1) x average latency. It reacts to both load and slowness,
+ *     without the herding of always picking the single best endpoint.</li>
+ *     <li>{@link BalancingStrategy#LEAST_OUTSTANDING_REQUESTS}: uses the endpoint with the fewest requests in
+ *     flight.</li>
+ * </ul>
+ *
+ * Health is checked passively, based on the outcome of the requests: failures (exceptions and 5xx responses) and the
+ * average latency (EWMA) of each endpoint are recorded. An endpoint is ejected, i.e. receives no requests, after a
+ * number of consecutive failures, or when its average latency exceeds the median one of the endpoints by a factor.
+ * Each ejection lasts longer than the previous one of the same endpoint (ejection time x number of ejections), up
+ * to the max ejection time. The number of ejections decays by one for every ejection time an endpoint stays healthy,
+ * so that an endpoint which failed once in a while is not punished as if it were flapping.
+ * At most maxEjectionPercent of the endpoints are ejected at any time, so that a failure of the whole service does not
+ * leave it with no endpoints at all.
+ *
+ * Usage example
+ * <pre>
+ *   var client = LoadBalancingWebClient.builder(List.of(
+ *           Endpoint.http("replica-1", 8080),
+ *           Endpoint.http("replica-2", 8080),
+ *           Endpoint.http("replica-3", 8080)))
+ *       .build();
+ *
+ *   var user = WebResponseHandler.&lt;User&gt;create()
+ *       .if200(response -> decodeUser(response.body()))
+ *       .execute(client.get(endpoint -> endpoint.url().addPath("users").addPath(id), emptyList()));
+ * </pre>
+ *
+ * This class IS thread safe.
+ */
+public final class LoadBalancingWebClient {
+
+  public static LoadBalancingWebClientBuilder builder(List<Endpoint> endpoints) {
+    if (nonNull("endpoints", endpoints).isEmpty()) {
+      throw new IllegalArgumentException("Argument:endpoints invalid. At least one endpoint expected.");
+    }
+    return new LoadBalancingWebClientBuilder(List.copyOf(endpoints));
+  }
+
+  public enum BalancingStrategy {
+    POWER_OF_TWO_CHOICES,
+    LEAST_OUTSTANDING_REQUESTS
+  }
+
+  /**
+   * @param url Builds the url of the request for the chosen endpoint, starting from {@link Endpoint#url()}.
+   */
+  public WebRequest get(Function<Endpoint, WebUrl> url, List<HttpHeader> headers) {
+    return execute(endpoint -> webClient.get(url.apply(endpoint), headers));
+  }
+
+  public WebRequest post(Function<Endpoint, WebUrl> url, List<HttpHeader> headers, RequestBody body) {
+    return execute(endpoint -> webClient.post(url.apply(endpoint), headers, body));
+  }
+
+  public WebRequest put(Function<Endpoint, WebUrl> url, List<HttpHeader> headers, RequestBody body) {
+    return execute(endpoint -> webClient.put(url.apply(endpoint), headers, body));
+  }
+
+  public WebRequest delete(Function<Endpoint, WebUrl> url, List<HttpHeader> headers) {
+    return execute(endpoint -> webClient.delete(url.apply(endpoint), headers));
+  }
+
+  public AsyncWebRequest getAsync(Function<Endpoint, WebUrl> url, List<HttpHeader> headers) {
+    return executeAsync(endpoint -> webClient.getAsync(url.apply(endpoint), headers));
+  }
+
+  public AsyncWebRequest postAsync(Function<Endpoint, WebUrl> url, List<HttpHeader> headers, RequestBody body) {
+    return executeAsync(endpoint -> webClient.postAsync(url.apply(endpoint), headers, body));
+  }
+
+  public AsyncWebRequest putAsync(Function<Endpoint, WebUrl> url, List<HttpHeader> headers, RequestBody body) {
+    return executeAsync(endpoint -> webClient.putAsync(url.apply(endpoint), headers, body));
+  }
+
+  public AsyncWebRequest deleteAsync(Function<Endpoint, WebUrl> url, List<HttpHeader> headers) {
+    return executeAsync(endpoint -> webClient.deleteAsync(url.apply(endpoint), headers));
+  }
+
+  public List<EndpointStats> getEndpointStats() {
+    final var now = timeKeeper.getNanoTime();
+    return endpoints.stream().map(endpoint -> endpoint.toStats(now)).toList();
+  }
+
+  private WebRequest execute(Function<Endpoint, WebRequest> request) {
+    final var endpoint = choose();
+    final var startedAt = endpoint.onStart(timeKeeper);
+
+    final WebRequest webRequest;
+    try {
+      webRequest = request.apply(endpoint.endpoint);
+    } catch (RuntimeException ex) {
+      onComplete(endpoint, startedAt, false);
+      throw ex;
+    }
+
+    onComplete(endpoint, startedAt, webRequest.get().map(LoadBalancingWebClient::isHealthy, failure -> false));
+    return webRequest;
+  }
+
+  private AsyncWebRequest executeAsync(Function<Endpoint, AsyncWebRequest> request) {
+    final var endpoint = choose();
+    final var startedAt = endpoint.onStart(timeKeeper);
+
+    final AsyncWebRequest asyncWebRequest;
+    try {
+      asyncWebRequest = request.apply(endpoint.endpoint);
+    } catch (RuntimeException ex) {
+      onComplete(endpoint, startedAt, false);
+      throw ex;
+    }
+
+    return new AsyncWebRequest(asyncWebRequest.get().whenComplete((response, failure) ->
+      onComplete(endpoint, startedAt, failure == null && isHealthy(response))));
+  }
+
+  private EndpointState choose() {
+    final var now = timeKeeper.getNanoTime();
+    final var candidates = new ArrayList<EndpointState>(endpoints.size());
+    for (final var endpoint : endpoints) {
+      if (!endpoint.isEjected(now)) {
+        candidates.add(endpoint);
+      }
+    }
+    if (candidates.isEmpty()) {
+      candidates.addAll(endpoints);
+    }
+
+    if (candidates.size() == 1) {
+      return candidates.get(0);
+    }
+
+    return switch (strategy) {
+      case POWER_OF_TWO_CHOICES -> chooseOutOfTwo(candidates);
+      case LEAST_OUTSTANDING_REQUESTS -> chooseLeastOutstanding(candidates);
+    };
+  }
+
+  private EndpointState chooseOutOfTwo(List<EndpointState> candidates) {
+    final var first = RandomSource.nextInt(0, candidates.size());
+    // A second, distinct endpoint
+    final var second = (first + RandomSource.nextInt(1, candidates.size())) % candidates.size();
+
+    final var a = candidates.get(first);
+    final var b = candidates.get(second);
+
+    // Endpoints with no latency samples yet are assumed to be as fast as the average one
+    final var defaultLatency = a.getSampleCount() == 0 || b.getSampleCount() == 0 ? meanLatency(candidates) : 0.0;
+    return a.cost(defaultLatency) <= b.cost(defaultLatency) ? a : b;
+  }
+
+  private static EndpointState chooseLeastOutstanding(List<EndpointState> candidates) {
+    // Starting from a random endpoint, so that ties are not always resolved in favour of the first endpoints
+    final var offset = RandomSource.nextInt(0, candidates.size());
+    var best = candidates.get(offset);
+    for (var i = 1; i < candidates.size(); i++) {
+      final var candidate = candidates.get((offset + i) % candidates.size());
+      if (candidate.inFlight.get() < best.inFlight.get()) {
+        best = candidate;
+      }
+    }
+    return best;
+  }
+
+  private void onComplete(EndpointState endpoint, long startedAt, boolean isSuccess) {
+    final var now = timeKeeper.getNanoTime();
+    endpoint.onComplete(now - startedAt, isSuccess);
+
+    if (!isSuccess && endpoint.consecutiveFailures.get() >= consecutiveFailuresToEject) {
+      tryEject(endpoint, now);
+    } else if (isSuccess && latencyOutlierFactor > 0.0 && isLatencyOutlier(endpoint)) {
+      tryEject(endpoint, now);
+    }
+  }
+
+  private boolean isLatencyOutlier(EndpointState endpoint) {
+    if (endpoints.size() < MIN_ENDPOINTS_FOR_LATENCY_DETECTION || endpoint.getSampleCount() < MIN_LATENCY_SAMPLES) {
+      return false;
+    }
+
+    final var latencies = endpoints.stream()
+      .filter(e -> e.getSampleCount() >= MIN_LATENCY_SAMPLES)
+      .mapToDouble(EndpointState::getLatencyEwma)
+      .sorted()
+      .toArray();
+    if (latencies.length < MIN_ENDPOINTS_FOR_LATENCY_DETECTION) {
+      return false;
+    }
+
+    final var median = latencies[latencies.length / 2];
+    return endpoint.getLatencyEwma() > latencyOutlierFactor * median;
+  }
+
+  private synchronized void tryEject(EndpointState endpoint, long now) {
+    if (endpoint.isEjected(now)) {
+      return;
+    }
+
+    final var ejectedCount = endpoints.stream().filter(e -> e.isEjected(now)).count();
+    if ((ejectedCount + 1) * 100 > (long) maxEjectionPercent * endpoints.size()) {
+      return;
+    }
+
+    endpoint.eject(now, ejectionTimeInNanos, maxEjectionTimeInNanos);
+  }
+
+  private static double meanLatency(List<EndpointState> candidates) {
+    return candidates.stream()
+      .filter(endpoint -> endpoint.getSampleCount() > 0)
+      .mapToDouble(EndpointState::getLatencyEwma)
+      .average()
+      .orElse(1.0);
+  }
+
+  private static boolean isHealthy(ParsedWebResponse response) {
+    return response.statusCode() < 500;
+  }
+
+  private LoadBalancingWebClient(LoadBalancingWebClientBuilder builder) {
+    this.webClient = WebClient.create(builder.configuration);
+    this.endpoints = builder.endpoints.stream().map(EndpointState::new).toList();
+    this.strategy = builder.strategy;
+    this.consecutiveFailuresToEject = builder.consecutiveFailuresToEject;
+    this.ejectionTimeInNanos = builder.ejectionTime.toNanos();
+    this.maxEjectionTimeInNanos = Math.max(ejectionTimeInNanos, builder.maxEjectionTime.toNanos());
+    this.maxEjectionPercent = builder.maxEjectionPercent;
+    this.latencyOutlierFactor = builder.latencyOutlierFactor;
+    this.timeKeeper = builder.timeKeeper;
+  }
+
+  private final WebClient webClient;
+  private final List<EndpointState> endpoints;
+  private final BalancingStrategy strategy;
+  private final int consecutiveFailuresToEject;
+  private final long ejectionTimeInNanos;
+  private final long maxEjectionTimeInNanos;
+  private final int maxEjectionPercent;
+  private final double latencyOutlierFactor;
+  private final TimeKeeper timeKeeper;
+
+  private static final int MIN_LATENCY_SAMPLES = 20;
+  private static final int MIN_ENDPOINTS_FOR_LATENCY_DETECTION = 3;
+  private static final double EWMA_WEIGHT = 0.2;
+
+  /**
+   * An endpoint (scheme, host and port) requests are routed to.
+   */
+  public record Endpoint(boolean isSecure, String host, int port) {
+
+    public static Endpoint http(String host, int port) {
+      return new Endpoint(false, nonNull("host", host), port);
+    }
+
+    public static Endpoint https(String host, int port) {
+      return new Endpoint(true, nonNull("host", host), port);
+    }
+
+    /**
+     * @return A new url pointing to this endpoint, to which paths and query params can be added.
+     */
+    public WebUrl url() {
+      return isSecure ? WebUrl.https(host, port) : WebUrl.http(host, port);
+    }
+  }
+
+  /**
+   * @param latencyEwmaInNanos The exponentially weighted moving average of the latency of the requests.
+   * @param failureCount Requests which failed or were answered with a 5xx status code.
+   */
+  public record EndpointStats(
+    Endpoint endpoint,
+    int inFlightRequests,
+    long requestCount,
+    long failureCount,
+    long latencyEwmaInNanos,
+    boolean isEjected) {}
+
+  private static final class EndpointState {
+
+    private EndpointState(Endpoint endpoint) {
+      this.endpoint = endpoint;
+      this.inFlight = new AtomicInteger();
+      this.consecutiveFailures = new AtomicInteger();
+      this.requests = new LongAdder();
+      this.failures = new LongAdder();
+      this.ejectedUntilNanos = 0L;
+      this.isEjected = false;
+    }
+
+    private long onStart(TimeKeeper timeKeeper) {
+      inFlight.incrementAndGet();
+      requests.increment();
+      return timeKeeper.getNanoTime();
+    }
+
+    private void onComplete(long latencyInNanos, boolean isSuccess) {
+      inFlight.decrementAndGet();
+      if (!isSuccess) {
+        failures.increment();
+        consecutiveFailures.incrementAndGet();
+        return;
+      }
+
+      consecutiveFailures.set(0);
+      synchronized (this) {
+        latencyEwma = sampleCount == 0 ? latencyInNanos : latencyEwma + EWMA_WEIGHT * (latencyInNanos - latencyEwma);
+        sampleCount++;
+      }
+    }
+
+    private double cost(double defaultLatency) {
+      final var latency = getSampleCount() == 0 ? defaultLatency : getLatencyEwma();
+      return (inFlight.get() + 1) * latency;
+    }
+
+    private synchronized boolean isEjected(long now) {
+      if (isEjected && now - ejectedUntilNanos >= 0L) {
+        // Back in rotation with a clean record, so that it is judged on how it performs from now on
+        isEjected = false;
+        consecutiveFailures.set(0);
+        latencyEwma = 0.0;
+        sampleCount = 0;
+      }
+      return isEjected;
+    }
+
+    private synchronized void eject(long now, long ejectionTimeInNanos, long maxEjectionTimeInNanos) {
+      // One ejection is forgiven for every ejection time spent healthy since the end of the previous ejection
+      if (ejectionCount > 0) {
+        final var healthyPeriods = (now - ejectedUntilNanos) / ejectionTimeInNanos;
+        ejectionCount = (int) Math.max(0L, ejectionCount - healthyPeriods);
+      }
+
+      final var maxEjectionCount = maxEjectionTimeInNanos / ejectionTimeInNanos;
+      ejectionCount = (int) Math.min(ejectionCount + 1L, maxEjectionCount + 1L);
+      isEjected = true;
+      ejectedUntilNanos = now + Math.min(ejectionTimeInNanos * ejectionCount, maxEjectionTimeInNanos);
+    }
+
+    private synchronized double getLatencyEwma() {
+      return latencyEwma;
+    }
+
+    private synchronized int getSampleCount() {
+      return sampleCount;
+    }
+
+    private EndpointStats toStats(long now) {
+      return new EndpointStats(endpoint, inFlight.get(), requests.sum(), failures.sum(), Math.round(getLatencyEwma()),
+        isEjected(now));
+    }
+
+    private final Endpoint endpoint;
+    private final AtomicInteger inFlight;
+    private final AtomicInteger consecutiveFailures;
+    private final LongAdder requests;
+    private final LongAdder failures;
+    private long ejectedUntilNanos;
+    private boolean isEjected;
+    private int ejectionCount;
+    private double latencyEwma;
+    private int sampleCount;
+  }
+
+  public static final class LoadBalancingWebClientBuilder {
+
+    private LoadBalancingWebClientBuilder(List<Endpoint> endpoints) {
+      this.endpoints = endpoints;
+      this.configuration = WebClientConfiguration.create();
+      this.strategy = BalancingStrategy.POWER_OF_TWO_CHOICES;
+      this.consecutiveFailuresToEject = DEFAULT_CONSECUTIVE_FAILURES_TO_EJECT;
+      this.ejectionTime = DEFAULT_EJECTION_TIME;
+      this.maxEjectionTime = DEFAULT_MAX_EJECTION_TIME;
+      this.maxEjectionPercent = DEFAULT_MAX_EJECTION_PERCENT;
+      this.latencyOutlierFactor = DEFAULT_LATENCY_OUTLIER_FACTOR;
+      this.timeKeeper = TimeKeeper.createWithRealTimeKeeping();
+    }
+
+    /**
+     * The configuration of the underlying {@link WebClient}, shared by all endpoints.
+     */
+    public LoadBalancingWebClientBuilder withConfiguration(WebClientConfiguration configuration) {
+      this.configuration = nonNull("configuration", configuration);
+      return this;
+    }
+
+    public LoadBalancingWebClientBuilder withStrategy(BalancingStrategy strategy) {
+      this.strategy = nonNull("strategy", strategy);
+      return this;
+    }
+
+    /**
+     * Default value: 5.
+     */
+    public LoadBalancingWebClientBuilder withConsecutiveFailuresToEject(int consecutiveFailuresToEject) {
+      this.consecutiveFailuresToEject = inRange("consecutiveFailuresToEject", consecutiveFailuresToEject, 1,
+        MAX_VALUE, INCLUSIVE_INCLUSIVE);
+      return this;
+    }
+
+    /**
+     * The duration of the first ejection of an endpoint, multiplied by the number of ejections for subsequent ones.
+     * Default value: 30 seconds.
+     */
+    public LoadBalancingWebClientBuilder withEjectionTime(Duration ejectionTime) {
+      nonNull("ejectionTime", ejectionTime);
+      if (ejectionTime.isNegative() || ejectionTime.isZero()) {
+        throw new IllegalArgumentException("Argument:ejectionTime invalid. Failed 'in-range' check.");
+      }
+      this.ejectionTime = ejectionTime;
+      return this;
+    }
+
+    /**
+     * The upper bound of the ejection duration, however many times an endpoint has been ejected. It never falls below
+     * the ejection time. Default value: 5 minutes.
+     */
+    public LoadBalancingWebClientBuilder withMaxEjectionTime(Duration maxEjectionTime) {
+      nonNull("maxEjectionTime", maxEjectionTime);
+      if (maxEjectionTime.isNegative() || maxEjectionTime.isZero()) {
+        throw new IllegalArgumentException("Argument:maxEjectionTime invalid. Failed 'in-range' check.");
+      }
+      this.maxEjectionTime = maxEjectionTime;
+      return this;
+    }
+
+    /**
+     * Default value: 50.
+     */
+    public LoadBalancingWebClientBuilder withMaxEjectionPercent(int maxEjectionPercent) {
+      this.maxEjectionPercent = inRange("maxEjectionPercent", maxEjectionPercent, 0, 100, INCLUSIVE_INCLUSIVE);
+      return this;
+    }
+
+    /**
+     * Ejects endpoints whose average latency exceeds the median of all endpoints by the given factor. It applies only
+     * to services of at least 3 endpoints, once they have served at least 20 requests each. Default value: 3.0.
+     */
+    public LoadBalancingWebClientBuilder withLatencyOutlierFactor(double latencyOutlierFactor) {
+      if (!(latencyOutlierFactor > 1.0)) {
+        throw new IllegalArgumentException("Argument:latencyOutlierFactor invalid. Failed 'in-range' check.");
+      }
+      this.latencyOutlierFactor = latencyOutlierFactor;
+      return this;
+    }
+
+    /**
+     * Endpoints are ejected due to failures only.
+     */
+    public LoadBalancingWebClientBuilder withoutLatencyOutlierDetection() {
+      this.latencyOutlierFactor = 0.0;
+      return this;
+    }
+
+    public LoadBalancingWebClientBuilder withTimeKeeper(TimeKeeper timeKeeper) {
+      this.timeKeeper = nonNull("timeKeeper", timeKeeper);
+      return this;
+    }
+
+    public LoadBalancingWebClient build() {
+      return new LoadBalancingWebClient(this);
+    }
+
+    private final List<Endpoint> endpoints;
+    private WebClientConfiguration configuration;
+    private BalancingStrategy strategy;
+    private int consecutiveFailuresToEject;
+    private Duration ejectionTime;
+    private Duration maxEjectionTime;
+    private int maxEjectionPercent;
+    private double latencyOutlierFactor;
+    private TimeKeeper timeKeeper;
+
+    private static final int DEFAULT_CONSECUTIVE_FAILURES_TO_EJECT = 5;
+    private static final Duration DEFAULT_EJECTION_TIME = Duration.ofSeconds(30);
+    private static final Duration DEFAULT_MAX_EJECTION_TIME = Duration.ofMinutes(5);
+    private static final int DEFAULT_MAX_EJECTION_PERCENT = 50;
+    private static final double DEFAULT_LATENCY_OUTLIER_FACTOR = 3.0;
+  }
+}
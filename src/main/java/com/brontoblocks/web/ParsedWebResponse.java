@@ -1,25 +1,38 @@
 package com.brontoblocks.web;
 
+import java.net.http.HttpHeaders;
 import java.net.http.HttpResponse;
 import java.util.Optional;
 
 public class ParsedWebResponse {
 
   public int statusCode() {
-    return response.statusCode();
+    return statusCode;
   }
 
   public String body() {
-    return response.body();
+    return body;
   }
 
   public Optional<String> getHeader(String key) {
-    return response.headers().firstValue(key);
+    return headers.firstValue(key);
   }
 
   public ParsedWebResponse(HttpResponse<String> response) {
-    this.response = response;
+    this(response.statusCode(), response.body(), response.headers());
   }
 
-  private final HttpResponse<String> response;
+  ParsedWebResponse(int statusCode, String body, HttpHeaders headers) {
+    this.statusCode = statusCode;
+    this.body = body;
+    this.headers = headers;
+  }
+
+  HttpHeaders headers() {
+    return headers;
+  }
+
+  private final int statusCode;
+  private final String body;
+  private final HttpHeaders headers;
 }
@@ -0,0 +1,137 @@
+package com.brontoblocks.web;
+
+import java.net.URI;
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Supplier;
+
+/**
+ * Limits the number of requests in flight per host (scheme, host and port). Excess requests are queued and sent, in
+ * FIFO order, as soon as a request to the same host completes. Asynchronous requests wait in the queue without holding
+ * a thread. The next request in line is sent from the given executor, rather than from the thread completing the
+ * previous one, which is typically a thread of the HttpClient.
+ *
+ * Over HTTP/2 every request is a stream of a single, multiplexed connection. Servers limit the number of concurrent
+ * streams per connection (SETTINGS_MAX_CONCURRENT_STREAMS, typically 100 - 250) and the HttpClient refuses or spills
+ * over excess streams to new connections. Keeping the requests in flight within the server's limit keeps every host
+ * on a single connection.
+ */
+final class PerHostRequestLimiter {
+
+  PerHostRequestLimiter(int maxRequestsPerHost, Executor executor) {
+    this.maxRequestsPerHost = maxRequestsPerHost;
+    this.executor = executor;
+    this.hosts = new ConcurrentHashMap<>();
+  }
+
+  <T> CompletableFuture<T> sendAsync(URI uri, Supplier<CompletableFuture<T>> sender) {
+    final var host = hostOf(uri);
+    final var result = new CompletableFuture<T>();
+
+    host.acquire(() -> {
+      final CompletableFuture<T> response;
+      try {
+        response = sender.get();
+      } catch (Throwable t) {
+        host.release();
+        result.completeExceptionally(t);
+        return;
+      }
+
+      response.whenComplete((value, failure) -> {
+        host.release();
+        if (failure == null) {
+          result.complete(value);
+        } else {
+          result.completeExceptionally(failure);
+        }
+      });
+    });
+
+    return result;
+  }
+
+  <T> T send(URI uri, Callable<T> sender) throws Exception {
+    final var host = hostOf(uri);
+    final var permit = new CompletableFuture<Void>();
+    host.acquire(() -> permit.complete(null));
+
+    try {
+      permit.get();
+    } catch (InterruptedException ex) {
+      // The permit may be granted later on. Hand it back once it is.
+      permit.thenRun(host::release);
+      throw ex;
+    } catch (ExecutionException ex) {
+      throw new IllegalStateException(ex.getCause());
+    }
+
+    try {
+      return sender.call();
+    } finally {
+      host.release();
+    }
+  }
+
+  private Host hostOf(URI uri) {
+    return hosts.computeIfAbsent(uri.getScheme() + "://" + uri.getHost() + ":" + uri.getPort(),
+      key -> new Host(maxRequestsPerHost, executor));
+  }
+
+  private final int maxRequestsPerHost;
+  private final Executor executor;
+  private final Map<String, Host> hosts;
+
+  private static final class Host {
+
+    private Host(int maxRequests, Executor executor) {
+      this.maxRequests = maxRequests;
+      this.executor = executor;
+      this.waiting = new ArrayDeque<>();
+      this.inFlight = 0;
+    }
+
+    private void acquire(Runnable onAcquired) {
+      synchronized (this) {
+        if (inFlight >= maxRequests) {
+          waiting.add(onAcquired);
+          return;
+        }
+        inFlight++;
+      }
+      onAcquired.run();
+    }
+
+    private void release() {
+      final Runnable next;
+      synchronized (this) {
+        next = waiting.poll();
+        if (next == null) {
+          inFlight--;
+        }
+      }
+
+      // The permit passes on to the next request in line. It is sent from the executor, so that completing a request
+      // neither sends the next one on an HttpClient thread nor recurses through the whole queue.
+      if (next != null) {
+        try {
+          executor.execute(next);
+        } catch (RejectedExecutionException ex) {
+          next.run();
+        }
+      }
+    }
+
+    private final int maxRequests;
+    private final Executor executor;
+    private final Queue<Runnable> waiting;
+    private int inFlight;
+  }
+}
@@ -0,0 +1,162 @@
+package com.brontoblocks.web;
+
+import com.brontoblocks.json.JsonEngine;
+import com.brontoblocks.utils.Try;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.http.HttpRequest.BodyPublisher;
+import java.net.http.HttpRequest.BodyPublishers;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.Optional;
+import java.util.concurrent.Flow;
+import java.util.function.Supplier;
+import java.util.zip.GZIPOutputStream;
+
+import static com.brontoblocks.utils.ArgCheck.noNegativeLong;
+import static com.brontoblocks.utils.ArgCheck.nonNull;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * The body of a request. Apart from ofString(...), none of the following modes requires the payload to be built as
+ * a String, and ofFile(...), ofInputStream(...) and ofPublisher(...) stream it without ever holding it in memory.
+ * See {@link WebClient#post(WebUrl, java.util.List, RequestBody)}.
+ */
+public final class RequestBody {
+
+  public static RequestBody ofString(String body) {
+    return ofBytes(nonNull("body", body).getBytes(UTF_8));
+  }
+
+  /**
+   * The array is sent as is, hence it must not be modified until the request completes.
+   */
+  public static RequestBody ofBytes(byte[] body) {
+    return ofBytes(nonNull("body", body), 0, body.length, null);
+  }
+
+  /**
+   * Sends the remaining bytes of the buffer. Heap buffers are sent without copying, hence they must not be modified
+   * until the request completes. Direct buffers are copied.
+   */
+  public static RequestBody ofByteBuffer(ByteBuffer body) {
+    nonNull("body", body);
+
+    if (body.hasArray()) {
+      return ofBytes(body.array(), body.arrayOffset() + body.position(), body.remaining(), null);
+    }
+
+    final var bytes = new byte[body.remaining()];
+    body.duplicate().get(bytes);
+    return ofBytes(bytes);
+  }
+
+  /**
+   * Streams the content of the file, read through a FileChannel as the request is sent.
+   * @throws Try.TryWrappedException if the file does not exist.
+   */
+  public static RequestBody ofFile(Path file) {
+    nonNull("file", file);
+    return new RequestBody(Try.ofThrowing(() -> BodyPublishers.ofFile(file)).getOrThrow());
+  }
+
+  /**
+   * Streams the content of the stream returned by the supplier. The supplier is called (and the stream closed) every
+   * time the request is sent, e.g. once per retry.
+   */
+  public static RequestBody ofInputStream(Supplier<? extends InputStream> streamSupplier) {
+    return new RequestBody(BodyPublishers.ofInputStream(nonNull("streamSupplier", streamSupplier)));
+  }
+
+  /**
+   * Streams the published buffers, using chunked transfer encoding (HTTP/1.1) since the length is unknown.
+   */
+  public static RequestBody ofPublisher(Flow.Publisher<ByteBuffer> publisher) {
+    return new RequestBody(BodyPublishers.fromPublisher(nonNull("publisher", publisher)));
+  }
+
+  /**
+   * Streams the published buffers, which must add up to exactly contentLength bytes.
+   */
+  public static RequestBody ofPublisher(Flow.Publisher<ByteBuffer> publisher, long contentLength) {
+    return new RequestBody(
+      BodyPublishers.fromPublisher(nonNull("publisher", publisher), noNegativeLong("contentLength", contentLength)));
+  }
+
+  /**
+   * Serialises the object directly to UTF-8 encoded bytes, without an intermediate String. The Content-Type header is
+   * set to application/json, unless specified otherwise in the request's headers.
+   */
+  public static RequestBody ofJson(JsonEngine jsonEngine, Object body) {
+    final var bytes = nonNull("jsonEngine", jsonEngine).encodeToBytes(body);
+    return ofBytes(bytes, 0, bytes.length, JSON_CONTENT_TYPE);
+  }
+
+  BodyPublisher publisher() {
+    return publisher;
+  }
+
+  Optional<String> contentType() {
+    return Optional.ofNullable(contentType);
+  }
+
+  /**
+   * @return This body gzip compressed, if it is held in memory and at least minSizeInBytes long, otherwise this body.
+   * Streamed bodies are never compressed, since their size is not known upfront.
+   */
+  RequestBody compressIfLargerThan(int minSizeInBytes) {
+    if (bytes == null || isCompressed || length < minSizeInBytes) {
+      return this;
+    }
+
+    final var compressed = new ByteArrayOutputStream(length / 4);
+    try (var gzip = new GZIPOutputStream(compressed)) {
+      gzip.write(bytes, offset, length);
+    } catch (IOException ex) {
+      // Not thrown by in-memory streams
+      throw new UncheckedIOException(ex);
+    }
+
+    final var compressedBytes = compressed.toByteArray();
+    return new RequestBody(
+      BodyPublishers.ofByteArray(compressedBytes), contentType, compressedBytes, 0, compressedBytes.length, true);
+  }
+
+  private static RequestBody ofBytes(byte[] bytes, int offset, int length, String contentType) {
+    return new RequestBody(
+      BodyPublishers.ofByteArray(bytes, offset, length), contentType, bytes, offset, length, false);
+  }
+
+  private RequestBody(BodyPublisher publisher) {
+    this(publisher, null, null, 0, 0, false);
+  }
+
+  private RequestBody(
+    BodyPublisher publisher,
+    String contentType,
+    byte[] bytes,
+    int offset,
+    int length,
+    boolean isCompressed) {
+
+    this.publisher = publisher;
+    this.contentType = contentType;
+    this.bytes = bytes;
+    this.offset = offset;
+    this.length = length;
+    this.isCompressed = isCompressed;
+  }
+
+  private final BodyPublisher publisher;
+  private final String contentType;
+  // The content of in-memory bodies, null for streamed ones
+  private final byte[] bytes;
+  private final int offset;
+  private final int length;
+  private final boolean isCompressed;
+
+  private static final String JSON_CONTENT_TYPE = "application/json";
+}
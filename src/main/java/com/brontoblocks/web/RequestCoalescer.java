@@ -0,0 +1,93 @@
+package com.brontoblocks.web;
+
+import com.brontoblocks.exception.functional.ThrowingFunction;
+
+import java.net.URI;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Function;
+
+/**
+ * Deduplicates concurrent identical requests (single-flight): while a request is in flight, identical requests (same
+ * URI and headers) do not go out, but wait for it and share its response. Once the response arrives, the next
+ * identical request goes out again, hence responses are never reused after the fact (see {@link WebResponseCache} for
+ * that).
+ *
+ * Only meant for idempotent requests (GET), whose responses are immutable and thus safe to share.
+ */
+final class RequestCoalescer {
+
+  RequestCoalescer() {
+    this.inFlight = new ConcurrentHashMap<>();
+  }
+
+  ParsedWebResponse exchange(
+    HttpRequest request,
+    ThrowingFunction<HttpRequest, ParsedWebResponse> exchange) throws Exception {
+
+    final var key = new Key(request.uri(), request.headers());
+    final var flight = new CompletableFuture<ParsedWebResponse>();
+    final var ongoing = inFlight.putIfAbsent(key, flight);
+    if (ongoing != null) {
+      return await(ongoing);
+    }
+
+    try {
+      final var response = exchange.applyThrows(request);
+      inFlight.remove(key, flight);
+      flight.complete(response);
+      return response;
+    } catch (Throwable t) {
+      inFlight.remove(key, flight);
+      flight.completeExceptionally(t);
+      throw t;
+    }
+  }
+
+  CompletableFuture<ParsedWebResponse> exchangeAsync(
+    HttpRequest request,
+    Function<HttpRequest, CompletableFuture<ParsedWebResponse>> exchange) {
+
+    final var key = new Key(request.uri(), request.headers());
+    final var flight = new CompletableFuture<ParsedWebResponse>();
+    final var ongoing = inFlight.putIfAbsent(key, flight);
+    if (ongoing != null) {
+      // A copy, so that a caller cancelling its own future does not affect the others
+      return ongoing.copy();
+    }
+
+    try {
+      exchange.apply(request).whenComplete((response, failure) -> {
+        inFlight.remove(key, flight);
+        if (failure == null) {
+          flight.complete(response);
+        } else {
+          flight.completeExceptionally(failure);
+        }
+      });
+    } catch (Throwable t) {
+      inFlight.remove(key, flight);
+      flight.completeExceptionally(t);
+    }
+    return flight.copy();
+  }
+
+  private static ParsedWebResponse await(CompletableFuture<ParsedWebResponse> flight) throws Exception {
+    try {
+      return flight.get();
+    } catch (ExecutionException ex) {
+      if (ex.getCause() instanceof Exception cause) {
+        throw cause;
+      }
+      throw ex;
+    }
+  }
+
+  private final Map<Key, CompletableFuture<ParsedWebResponse>> inFlight;
+
+  private record Key(URI uri, HttpHeaders headers) {}
+}
@@ -0,0 +1,92 @@
+package com.brontoblocks.web;
+
+import com.brontoblocks.json.JsonEngine;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.http.HttpResponse.BodyHandler;
+import java.net.http.HttpResponse.BodyHandlers;
+import java.net.http.HttpResponse.BodySubscribers;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.Flow;
+import java.util.function.Supplier;
+
+import static com.brontoblocks.utils.ArgCheck.nonNull;
+
+/**
+ * Determines how the body of a response is consumed. Unlike the String bodies of {@link ParsedWebResponse}, none of
+ * the following modes buffers the whole body on the heap, hence they are suitable for arbitrarily large responses.
+ * See {@link WebClient#getStreamed(WebUrl, List, ResponseBody)}.
+ */
+public final class ResponseBody<T> {
+
+  /**
+   * The body is read on demand from the returned stream. The stream MUST be closed by the caller, otherwise the
+   * underlying connection is not released.
+   */
+  public static ResponseBody<InputStream> ofInputStream() {
+    return of(BodyHandlers.ofInputStream());
+  }
+
+  /**
+   * The body is written to the given file (created or truncated) as it arrives, through a FileChannel.
+   * The response completes once the whole body has been written.
+   */
+  public static ResponseBody<Path> ofFile(Path file) {
+    return of(BodyHandlers.ofFile(nonNull("file", file)));
+  }
+
+  /**
+   * The body is published as it arrives. The publisher MUST be subscribed to, otherwise the underlying connection is
+   * not released.
+   */
+  public static ResponseBody<Flow.Publisher<List<ByteBuffer>>> ofPublisher() {
+    return of(BodyHandlers.ofPublisher());
+  }
+
+  /**
+   * Successful (2xx) bodies are decoded incrementally, as they arrive, to an instance of the specified class.
+   * Other bodies are discarded and the result is empty.
+   */
+  public static <T> ResponseBody<Optional<T>> ofJson(JsonEngine jsonEngine, Class<T> clazz) {
+    nonNull("jsonEngine", jsonEngine);
+    nonNull("clazz", clazz);
+
+    return new ResponseBody<>(responseInfo -> isSuccessful(responseInfo.statusCode())
+      // Decoding blocks until the body has arrived, which must not happen on the client's threads delivering it.
+      // It is deferred to whoever gets the supplier: the caller, or the body decoding executor for async requests.
+      ? BodySubscribers.mapping(BodySubscribers.ofInputStream(),
+          inputStream -> () -> Optional.of(decodeAndClose(jsonEngine, inputStream, clazz)))
+      : BodySubscribers.replacing(Optional::empty));
+  }
+
+  BodyHandler<Supplier<T>> handler() {
+    return handler;
+  }
+
+  private static <T> ResponseBody<T> of(BodyHandler<T> handler) {
+    return new ResponseBody<>(responseInfo -> BodySubscribers.mapping(handler.apply(responseInfo), body -> () -> body));
+  }
+
+  private static <T> T decodeAndClose(JsonEngine jsonEngine, InputStream inputStream, Class<T> clazz) {
+    try (inputStream) {
+      return jsonEngine.decode(inputStream, clazz);
+    } catch (IOException ex) {
+      throw new UncheckedIOException(ex);
+    }
+  }
+
+  private static boolean isSuccessful(int statusCode) {
+    return statusCode >= 200 && statusCode < 300;
+  }
+
+  private ResponseBody(BodyHandler<Supplier<T>> handler) {
+    this.handler = handler;
+  }
+
+  private final BodyHandler<Supplier<T>> handler;
+}
@@ -0,0 +1,30 @@
+package com.brontoblocks.web;
+
+import java.net.http.HttpResponse;
+import java.util.Optional;
+
+/**
+ * A response whose body is consumed as specified by a {@link ResponseBody}, rather than parsed to a String.
+ */
+public class StreamedWebResponse<T> {
+
+  public int statusCode() {
+    return response.statusCode();
+  }
+
+  public T body() {
+    return body;
+  }
+
+  public Optional<String> getHeader(String key) {
+    return response.headers().firstValue(key);
+  }
+
+  StreamedWebResponse(HttpResponse<?> response, T body) {
+    this.response = response;
+    this.body = body;
+  }
+
+  private final HttpResponse<?> response;
+  private final T body;
+}
@@ -3,9 +3,20 @@ package com.brontoblocks.web;
 import com.brontoblocks.utils.Try;
 
 import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpResponse.BodyHandler;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Supplier;
 
-import static java.net.http.HttpRequest.BodyPublishers;
+import static com.brontoblocks.web.DecompressingBodySubscriber.ACCEPTED_ENCODINGS;
+import static com.brontoblocks.web.DecompressingBodySubscriber.CONTENT_ENCODING;
+import static com.brontoblocks.web.DecompressingBodySubscriber.GZIP;
+import static com.brontoblocks.web.DecompressingBodySubscriber.decoded;
+import static com.brontoblocks.web.DecompressingBodySubscriber.decompressing;
 import static java.net.http.HttpRequest.BodyPublishers.noBody;
 import static java.net.http.HttpRequest.Builder;
 import static java.net.http.HttpRequest.newBuilder;
@@ -35,7 +46,14 @@ public class WebClient {
   }
 
   public WebRequest post(WebUrl webUrl, List<HttpHeader> headers, String body) {
-    return toWebRequest(newRequest(webUrl, headers).POST(BodyPublishers.ofString(body)));
+    return post(webUrl, headers, RequestBody.ofString(body));
+  }
+
+  /**
+   * Same as post(webUrl, headers, body), but the body is not limited to a String. See {@link RequestBody}.
+   */
+  public WebRequest post(WebUrl webUrl, List<HttpHeader> headers, RequestBody body) {
+    return toWebRequest(newRequest(webUrl, headers, POST, body));
   }
 
   public WebRequest put(WebUrl webUrl, List<HttpHeader> headers) {
@@ -43,7 +61,11 @@ public class WebClient {
   }
 
   public WebRequest put(WebUrl webUrl, List<HttpHeader> headers, String body) {
-    return toWebRequest(newRequest(webUrl, headers).PUT(BodyPublishers.ofString(body)));
+    return put(webUrl, headers, RequestBody.ofString(body));
+  }
+
+  public WebRequest put(WebUrl webUrl, List<HttpHeader> headers, RequestBody body) {
+    return toWebRequest(newRequest(webUrl, headers, PUT, body));
   }
 
   public WebRequest delete(WebUrl webUrl, List<HttpHeader> headers) {
@@ -51,27 +73,218 @@ public class WebClient {
   }
 
   public WebRequest delete(WebUrl webUrl, List<HttpHeader> headers, String body) {
-    return toWebRequest(newRequest(webUrl, headers).PUT(BodyPublishers.ofString(body)));
+    return toWebRequest(newRequest(webUrl, headers, DELETE, RequestBody.ofString(body)));
+  }
+
+  /**
+   * Same as get(webUrl), but the request is sent without blocking the calling thread and the response is handled by
+   * the executor of the underlying HttpClient. Consequently, a few threads can have thousands of requests in flight.
+   * The same applies to every *Async method.
+   */
+  public AsyncWebRequest getAsync(WebUrl webUrl) {
+    return getAsync(webUrl, emptyList());
+  }
+
+  public AsyncWebRequest getAsync(WebUrl webUrl, List<HttpHeader> headers) {
+    return toAsyncWebRequest(newRequest(webUrl, headers).GET());
+  }
+
+  public AsyncWebRequest postAsync(WebUrl webUrl, List<HttpHeader> headers) {
+    return toAsyncWebRequest(newRequest(webUrl, headers).POST(noBody()));
+  }
+
+  public AsyncWebRequest postAsync(WebUrl webUrl, List<HttpHeader> headers, String body) {
+    return postAsync(webUrl, headers, RequestBody.ofString(body));
+  }
+
+  public AsyncWebRequest postAsync(WebUrl webUrl, List<HttpHeader> headers, RequestBody body) {
+    return toAsyncWebRequest(newRequest(webUrl, headers, POST, body));
+  }
+
+  public AsyncWebRequest putAsync(WebUrl webUrl, List<HttpHeader> headers) {
+    return toAsyncWebRequest(newRequest(webUrl, headers).PUT(noBody()));
+  }
+
+  public AsyncWebRequest putAsync(WebUrl webUrl, List<HttpHeader> headers, String body) {
+    return putAsync(webUrl, headers, RequestBody.ofString(body));
+  }
+
+  public AsyncWebRequest putAsync(WebUrl webUrl, List<HttpHeader> headers, RequestBody body) {
+    return toAsyncWebRequest(newRequest(webUrl, headers, PUT, body));
+  }
+
+  public AsyncWebRequest deleteAsync(WebUrl webUrl, List<HttpHeader> headers) {
+    return toAsyncWebRequest(newRequest(webUrl, headers).DELETE());
+  }
+
+  public AsyncWebRequest deleteAsync(WebUrl webUrl, List<HttpHeader> headers, String body) {
+    return toAsyncWebRequest(newRequest(webUrl, headers, DELETE, RequestBody.ofString(body)));
+  }
+
+  /**
+   * Same as get(webUrl, headers), but the body is consumed as specified by responseBody instead of being buffered to
+   * a String, e.g. streamed to a file or decoded to JSON as it arrives.
+   *
+   * When the number of requests per host is limited (see {@link WebClientConfiguration}), a request counts as in
+   * flight until its headers arrive, not until its body has been consumed.
+   */
+  public <T> StreamedWebResponse<T> getStreamed(WebUrl webUrl, List<HttpHeader> headers, ResponseBody<T> responseBody) {
+    final var httpRequest = newRequest(webUrl, headers).GET().build();
+    return Try.ofThrowing(() -> toStreamedWebResponse(send(httpRequest, responseBody.handler()))).getOrThrow();
+  }
+
+  /**
+   * Same as getStreamed(webUrl, headers, responseBody), but without blocking the calling thread. Bodies decoded to
+   * JSON are decoded by the body decoding executor (see {@link WebClientConfiguration}), never by the threads of the
+   * underlying HttpClient which deliver the body.
+   */
+  public <T> CompletableFuture<StreamedWebResponse<T>> getStreamedAsync(
+    WebUrl webUrl,
+    List<HttpHeader> headers,
+    ResponseBody<T> responseBody) {
+
+    final var httpRequest = newRequest(webUrl, headers).GET().build();
+    return sendAsync(httpRequest, responseBody.handler())
+      .thenApplyAsync(WebClient::toStreamedWebResponse, bodyDecodingExecutor);
   }
 
   private WebRequest toWebRequest(Builder httpRequestBuilder) {
-    return new WebRequest(
-      Try.ofThrowing(() ->
-        new ParsedWebResponse(httpClient.send(httpRequestBuilder.build(), ofString()))));
+    final var httpRequest = httpRequestBuilder.build();
+    return new WebRequest(Try.ofThrowing(() -> requestCoalescer != null && httpRequest.method().equals(GET)
+      ? requestCoalescer.exchange(httpRequest, this::exchange)
+      : exchange(httpRequest)));
+  }
+
+  private AsyncWebRequest toAsyncWebRequest(Builder httpRequestBuilder) {
+    final var httpRequest = httpRequestBuilder.build();
+    return new AsyncWebRequest(requestCoalescer != null && httpRequest.method().equals(GET)
+      ? requestCoalescer.exchangeAsync(httpRequest, this::exchangeAsync)
+      : exchangeAsync(httpRequest));
+  }
+
+  private ParsedWebResponse exchange(HttpRequest httpRequest) throws Exception {
+    if (responseCache == null) {
+      return new ParsedWebResponse(send(httpRequest, ofString()));
+    }
+
+    if (httpRequest.method().equals(GET)) {
+      return responseCache.send(httpRequest, request -> send(request, ofString()));
+    }
+
+    final var response = new ParsedWebResponse(send(httpRequest, ofString()));
+    responseCache.onUnsafeResponse(httpRequest, response.statusCode());
+    return response;
+  }
+
+  private CompletableFuture<ParsedWebResponse> exchangeAsync(HttpRequest httpRequest) {
+    if (responseCache == null) {
+      return sendAsync(httpRequest, ofString()).thenApply(ParsedWebResponse::new);
+    }
+
+    if (httpRequest.method().equals(GET)) {
+      return responseCache.sendAsync(httpRequest, request -> sendAsync(request, ofString()));
+    }
+
+    return sendAsync(httpRequest, ofString())
+      .thenApply(ParsedWebResponse::new)
+      .whenComplete((response, failure) -> {
+        if (response != null) {
+          responseCache.onUnsafeResponse(httpRequest, response.statusCode());
+        }
+      });
+  }
+
+  private <T> HttpResponse<T> send(HttpRequest httpRequest, BodyHandler<T> handler) throws Exception {
+    if (!isDecompressingResponses) {
+      return sendRaw(httpRequest, handler);
+    }
+    return decoded(sendRaw(httpRequest, decompressing(handler)));
+  }
+
+  private <T> HttpResponse<T> sendRaw(HttpRequest httpRequest, BodyHandler<T> bodyHandler) throws Exception {
+    return requestLimiter == null
+      ? httpClient.send(httpRequest, bodyHandler)
+      : requestLimiter.send(httpRequest.uri(), () -> httpClient.send(httpRequest, bodyHandler));
+  }
+
+  private <T> CompletableFuture<HttpResponse<T>> sendAsync(HttpRequest httpRequest, BodyHandler<T> handler) {
+    if (!isDecompressingResponses) {
+      return sendRawAsync(httpRequest, handler);
+    }
+    return sendRawAsync(httpRequest, decompressing(handler)).thenApply(DecompressingBodySubscriber::decoded);
+  }
+
+  private <T> CompletableFuture<HttpResponse<T>> sendRawAsync(HttpRequest httpRequest, BodyHandler<T> bodyHandler) {
+    return requestLimiter == null
+      ? httpClient.sendAsync(httpRequest, bodyHandler)
+      : requestLimiter.sendAsync(httpRequest.uri(), () -> httpClient.sendAsync(httpRequest, bodyHandler));
+  }
+
+  private static <T> StreamedWebResponse<T> toStreamedWebResponse(HttpResponse<Supplier<T>> response) {
+    return new StreamedWebResponse<>(response, response.body().get());
   }
 
   private Builder newRequest(WebUrl webUrl, List<HttpHeader> headers) {
     final var builder = newBuilder();
     builder.uri(webUrl.toUri());
     headers.forEach(h -> builder.setHeader(h.name, h.value));
+    if (isDecompressingResponses && !hasHeader(headers, ACCEPT_ENCODING)) {
+      builder.setHeader(ACCEPT_ENCODING, ACCEPTED_ENCODINGS);
+    }
     return builder;
   }
 
+  private Builder newRequest(WebUrl webUrl, List<HttpHeader> headers, String method, RequestBody body) {
+    final var builder = newRequest(webUrl, headers);
+
+    body.contentType()
+      .filter(contentType -> !hasHeader(headers, CONTENT_TYPE))
+      .ifPresent(contentType -> builder.setHeader(CONTENT_TYPE, contentType));
+
+    var requestBody = body;
+    if (requestCompressionThreshold != NO_COMPRESSION && !hasHeader(headers, CONTENT_ENCODING)) {
+      requestBody = body.compressIfLargerThan(requestCompressionThreshold);
+      if (requestBody != body) {
+        builder.setHeader(CONTENT_ENCODING, GZIP);
+      }
+    }
+
+    return builder.method(method, requestBody.publisher());
+  }
+
+  private static boolean hasHeader(List<HttpHeader> headers, String name) {
+    return headers.stream().anyMatch(h -> h.name.equalsIgnoreCase(name));
+  }
+
   private WebClient(WebClientConfiguration config) {
     this.httpClient = config.getHttpClient();
+    this.requestLimiter = config.getMaxConcurrentRequestsPerHost().stream()
+      .mapToObj(maxRequestsPerHost -> new PerHostRequestLimiter(maxRequestsPerHost,
+        httpClient.executor().orElseGet(ForkJoinPool::commonPool)))
+      .findFirst()
+      .orElse(null);
+    this.isDecompressingResponses = config.isDecompressingResponses();
+    this.requestCompressionThreshold = config.getRequestCompressionThreshold().orElse(NO_COMPRESSION);
+    this.responseCache = config.getResponseCache().orElse(null);
+    this.requestCoalescer = config.isCoalescingRequests() ? new RequestCoalescer() : null;
+    this.bodyDecodingExecutor = config.getBodyDecodingExecutor();
   }
 
   private final HttpClient httpClient;
+  private final PerHostRequestLimiter requestLimiter;
+  private final boolean isDecompressingResponses;
+  private final int requestCompressionThreshold;
+  private final WebResponseCache responseCache;
+  private final RequestCoalescer requestCoalescer;
+  private final Executor bodyDecodingExecutor;
+
+  private static final String CONTENT_TYPE = "Content-Type";
+  private static final String ACCEPT_ENCODING = "Accept-Encoding";
+  private static final String GET = "GET";
+  private static final String POST = "POST";
+  private static final String PUT = "PUT";
+  private static final String DELETE = "DELETE";
+  private static final int NO_COMPRESSION = -1;
 
   public record HttpHeader(String name, String value) {}
 }
@@ -3,35 +3,237 @@ package com.brontoblocks.web;
 import java.net.http.HttpClient;
 import java.time.Duration;
 import java.time.temporal.ChronoUnit;
+import java.util.Optional;
+import java.util.OptionalInt;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
 import java.util.concurrent.SynchronousQueue;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import static com.brontoblocks.thread.ThreadUtils.newDaemonThread;
+import static com.brontoblocks.utils.ArgCheck.RangeArgCheckMode.INCLUSIVE_INCLUSIVE;
+import static com.brontoblocks.utils.ArgCheck.inRange;
+import static com.brontoblocks.utils.ArgCheck.nonNull;
 import static java.lang.Boolean.TRUE;
 import static java.lang.Integer.MAX_VALUE;
 import static java.net.http.HttpClient.Redirect.NEVER;
 import static java.net.http.HttpClient.Version.HTTP_1_1;
+import static java.net.http.HttpClient.Version.HTTP_2;
 
 public class WebClientConfiguration {
 
   public static WebClientConfiguration create() {
 
-    return new WebClientConfiguration(prepareClientWithDefaultConfiguration().build());
+    return builder().build();
+  }
+
+  /**
+   * Customizes the default configuration, see {@link WebClientConfigurationBuilder}.
+   */
+  public static WebClientConfigurationBuilder builder() {
+    return new WebClientConfigurationBuilder();
   }
 
   public void setHttpClient(HttpClient httpClient) {
     this.httpClient = httpClient;
   }
 
-  private WebClientConfiguration(HttpClient httpClient) {
-    this.httpClient = httpClient;
+  private WebClientConfiguration(WebClientConfigurationBuilder builder) {
+    this.httpClient = builder.httpClientBuilder.build();
+    this.maxConcurrentRequestsPerHost = builder.maxConcurrentRequestsPerHost;
+    this.isDecompressingResponses = builder.isDecompressingResponses;
+    this.requestCompressionThreshold = builder.requestCompressionThreshold;
+    this.responseCache = builder.responseCache;
+    this.isCoalescingRequests = builder.isCoalescingRequests;
+    this.bodyDecodingExecutor = builder.bodyDecodingExecutor != null
+      ? builder.bodyDecodingExecutor
+      : newBodyDecodingExecutor();
   }
 
   public HttpClient getHttpClient() {
     return httpClient;
   }
 
+  /**
+   * @return The max number of requests a WebClient keeps in flight per host, if limited.
+   */
+  public OptionalInt getMaxConcurrentRequestsPerHost() {
+    return maxConcurrentRequestsPerHost == UNLIMITED ? OptionalInt.empty() : OptionalInt.of(maxConcurrentRequestsPerHost);
+  }
+
+  /**
+   * @return True if compressed responses are requested (Accept-Encoding) and transparently decompressed.
+   */
+  public boolean isDecompressingResponses() {
+    return isDecompressingResponses;
+  }
+
+  /**
+   * @return The min size (in bytes) of the request bodies which are gzip compressed, if request compression is enabled.
+   */
+  public OptionalInt getRequestCompressionThreshold() {
+    return requestCompressionThreshold == NO_COMPRESSION ? OptionalInt.empty() : OptionalInt.of(requestCompressionThreshold);
+  }
+
+  public Optional<WebResponseCache> getResponseCache() {
+    return Optional.ofNullable(responseCache);
+  }
+
+  /**
+   * @return True if concurrent identical GET requests are deduplicated.
+   */
+  public boolean isCoalescingRequests() {
+    return isCoalescingRequests;
+  }
+
+  /**
+   * @return The executor which decodes the bodies of asynchronous streamed requests.
+   */
+  public Executor getBodyDecodingExecutor() {
+    return bodyDecodingExecutor;
+  }
+
   private HttpClient httpClient;
+  private final int maxConcurrentRequestsPerHost;
+  private final boolean isDecompressingResponses;
+  private final int requestCompressionThreshold;
+  private final WebResponseCache responseCache;
+  private final boolean isCoalescingRequests;
+  private final Executor bodyDecodingExecutor;
+
+  /**
+   * Usage example
+   * <pre>
+   *   WebClient.create(WebClientConfiguration.builder()
+   *     .enableHttp2()
+   *     .withMaxConcurrentRequestsPerHost(100)
+   *     .build());
+   * </pre>
+   *
+   * HTTP/2 multiplexes all the requests to a host over a single connection. Over https it is negotiated during the TLS
+   * handshake (ALPN). Over plain http (h2c) the first request to a host is sent as HTTP/1.1 with an upgrade offer,
+   * and the connection is multiplexed from then on. Note that the JDK's HttpClient does not support h2c with prior
+   * knowledge. Hosts that do not support HTTP/2 keep being served over HTTP/1.1.
+   *
+   * Connection reuse is configured JVM wide, through the system properties of the JDK's HttpClient, e.g.
+   * {@code jdk.httpclient.keepalive.timeout} (idle seconds before a pooled connection is closed, default 1200) and
+   * {@code jdk.httpclient.connectionPoolSize} (max pooled HTTP/1.1 connections, default unbounded).
+   *
+   * By default, responses are requested compressed (Accept-Encoding: gzip, deflate) and are decompressed as they
+   * arrive, whatever the way their bodies are consumed. Decompressed responses carry neither the Content-Encoding nor
+   * the Content-Length header sent by the server. Requests are sent uncompressed, unless request compression is enabled: not every server accepts
+   * compressed requests.
+   */
+  public static final class WebClientConfigurationBuilder {
+
+    private WebClientConfigurationBuilder() {
+      this.httpClientBuilder = prepareClientWithDefaultConfiguration();
+      this.maxConcurrentRequestsPerHost = UNLIMITED;
+      this.isDecompressingResponses = true;
+      this.requestCompressionThreshold = NO_COMPRESSION;
+    }
+
+    public WebClientConfigurationBuilder enableHttp2() {
+      return withHttpVersion(HTTP_2);
+    }
+
+    public WebClientConfigurationBuilder withHttpVersion(HttpClient.Version version) {
+      httpClientBuilder.version(nonNull("version", version));
+      return this;
+    }
+
+    public WebClientConfigurationBuilder withConnectTimeout(Duration connectTimeout) {
+      httpClientBuilder.connectTimeout(nonNull("connectTimeout", connectTimeout));
+      return this;
+    }
+
+    /**
+     * The executor which handles responses (and runs the stages of asynchronous requests).
+     */
+    public WebClientConfigurationBuilder withExecutor(Executor executor) {
+      httpClientBuilder.executor(nonNull("executor", executor));
+      return this;
+    }
+
+    /**
+     * Limits the requests in flight per host, queueing the excess ones. With HTTP/2, set it to the max concurrent
+     * streams the hosts allow, so that every host is served by a single connection.
+     */
+    public WebClientConfigurationBuilder withMaxConcurrentRequestsPerHost(int maxConcurrentRequestsPerHost) {
+      this.maxConcurrentRequestsPerHost = inRange("maxConcurrentRequestsPerHost", maxConcurrentRequestsPerHost, 1,
+        MAX_VALUE, INCLUSIVE_INCLUSIVE);
+      return this;
+    }
+
+    /**
+     * Neither requests compressed responses nor decompresses them. Requests may still set the Accept-Encoding header
+     * and handle the compressed bodies themselves.
+     */
+    public WebClientConfigurationBuilder withoutResponseDecompression() {
+      this.isDecompressingResponses = false;
+      return this;
+    }
+
+    /**
+     * Compresses (gzip) request bodies of at least minBodySizeInBytes, unless the request sets its own
+     * Content-Encoding. Only bodies held in memory are compressed (strings, byte arrays, buffers and JSON), streamed
+     * ones (files, streams and publishers) are sent as they are. Small bodies are not worth the CPU time, default
+     * value, if enabled: 1024 bytes.
+     */
+    public WebClientConfigurationBuilder withRequestCompression() {
+      return withRequestCompression(DEFAULT_REQUEST_COMPRESSION_THRESHOLD);
+    }
+
+    public WebClientConfigurationBuilder withRequestCompression(int minBodySizeInBytes) {
+      this.requestCompressionThreshold = inRange("minBodySizeInBytes", minBodySizeInBytes, 0, MAX_VALUE - 1,
+        INCLUSIVE_INCLUSIVE);
+      return this;
+    }
+
+    /**
+     * Serves GET requests from the given cache, as allowed by the Cache-Control, Expires, ETag and Last-Modified
+     * headers of the responses. See {@link WebResponseCache}.
+     */
+    public WebClientConfigurationBuilder withResponseCache(WebResponseCache responseCache) {
+      this.responseCache = nonNull("responseCache", responseCache);
+      return this;
+    }
+
+    /**
+     * While a GET request is in flight, identical GET requests (same url and headers) of the same WebClient do not go
+     * out, but share its response instead. It protects upstreams from stampedes, e.g. when a popular entry expires
+     * and many threads request it at once. Streamed GET requests are not coalesced.
+     */
+    public WebClientConfigurationBuilder withRequestCoalescing() {
+      this.isCoalescingRequests = true;
+      return this;
+    }
+
+    /**
+     * The executor which decodes the bodies of asynchronous streamed requests, see
+     * {@link WebClient#getStreamedAsync(WebUrl, java.util.List, ResponseBody)}. Decoding blocks until the whole body
+     * has arrived, which is why it does not run on the executor of the underlying HttpClient: the very threads which
+     * deliver the body. Default value: a cached pool of daemon threads.
+     */
+    public WebClientConfigurationBuilder withBodyDecodingExecutor(Executor bodyDecodingExecutor) {
+      this.bodyDecodingExecutor = nonNull("bodyDecodingExecutor", bodyDecodingExecutor);
+      return this;
+    }
+
+    public WebClientConfiguration build() {
+      return new WebClientConfiguration(this);
+    }
+
+    private final HttpClient.Builder httpClientBuilder;
+    private int maxConcurrentRequestsPerHost;
+    private boolean isDecompressingResponses;
+    private int requestCompressionThreshold;
+    private WebResponseCache responseCache;
+    private boolean isCoalescingRequests;
+    private Executor bodyDecodingExecutor;
+  }
 
   /**
    *   Default http client configuration. In most scenarios, the following values SHOULD NOT be changed.
@@ -56,10 +258,21 @@ public class WebClientConfiguration {
       .connectTimeout(DEFAULT_CONNECTION_ESTABLISHMENT_TIMEOUT);
   }
 
+  private static Executor newBodyDecodingExecutor() {
+    final var threadCounter = new AtomicInteger();
+    return Executors.newCachedThreadPool(
+      runnable -> newDaemonThread("web-client-body-decoder-" + threadCounter.incrementAndGet(), runnable));
+  }
+
   // Http connection related config
   private static final HttpClient.Version DEFAULT_HTTP_CONNECTION_VERSION = HTTP_1_1;
+  private static final int UNLIMITED = MAX_VALUE;
   private static final Duration DEFAULT_CONNECTION_ESTABLISHMENT_TIMEOUT = Duration.of(10, ChronoUnit.SECONDS);
 
+  // Compression config
+  private static final int DEFAULT_REQUEST_COMPRESSION_THRESHOLD = 1024;
+  private static final int NO_COMPRESSION = MAX_VALUE;
+
   // Http client thread pool config
   private static final int DEFAULT_CORE_POOL_SIZE = 2;
   private static final int DEFAULT_MAX_CORE_POOL_SIZE = MAX_VALUE;
@@ -0,0 +1,433 @@
+package com.brontoblocks.web;
+
+import com.brontoblocks.chrono.TimeKeeper;
+import com.brontoblocks.exception.functional.ThrowingFunction;
+
+import java.net.URI;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static com.brontoblocks.utils.ArgCheck.RangeArgCheckMode.INCLUSIVE_INCLUSIVE;
+import static com.brontoblocks.utils.ArgCheck.inRange;
+import static com.brontoblocks.utils.ArgCheck.nonNull;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+/**
+ * An in-memory HTTP cache for the GET requests of a {@link WebClient}, following the rules of a private cache
+ * (RFC 9111). Fresh responses are served without contacting the server. Stale responses are revalidated with a
+ * conditional request (If-None-Match / If-Modified-Since) and, if the server answers 304 Not Modified, the cached body
+ * is served again without being transferred.
+ *
+ * Responses are cached when:
+ * <ul>
+ *     <li>their status code is cacheable by default (e.g. 200, 301, 404) and</li>
+ *     <li>they carry an explicit freshness lifetime (Cache-Control: max-age, or Expires) or a validator (ETag or
+ *     Last-Modified) and</li>
+ *     <li>neither the request nor the response specifies Cache-Control: no-store, and the response does not specify
+ *     Vary: *</li>
+ * </ul>
+ * No heuristic freshness is applied: responses without an explicit lifetime are revalidated on every use. Responses
+ * with Cache-Control: no-cache are stored but always revalidated, as are requests with Cache-Control: no-cache.
+ * Requests with conditional or Range headers of their own bypass the cache. Successful POST, PUT and DELETE requests
+ * invalidate the cached response of their URL. Stale responses are never served, not even when the server fails.
+ *
+ * When the total (approximate heap) size of the cached bodies exceeds the capacity, the least recently used responses
+ * are evicted. Responses of streamed requests ({@link WebClient#getStreamed(WebUrl, List, ResponseBody)}) are not
+ * cached.
+ *
+ * Usage example
+ * <pre>
+ *   var cache = WebResponseCache.create(64 * 1024 * 1024);
+ *   var client = WebClient.create(WebClientConfiguration.builder().withResponseCache(cache).build());
+ *   ...
+ *   WebResponseCache.Snapshot stats = cache.snapshot();
+ * </pre>
+ *
+ * This class IS thread safe and a single instance may be shared by several clients.
+ */
+public final class WebResponseCache {
+
+  /**
+   * @param capacityInBytes The max total size of the cached bodies, as held in memory (two bytes per character).
+   */
+  public static WebResponseCache create(long capacityInBytes) {
+    return create(capacityInBytes, TimeKeeper.createWithRealTimeKeeping());
+  }
+
+  public static WebResponseCache create(long capacityInBytes, TimeKeeper timeKeeper) {
+    return new WebResponseCache(
+      inRange("capacityInBytes", capacityInBytes, 1L, Long.MAX_VALUE, INCLUSIVE_INCLUSIVE),
+      nonNull("timeKeeper", timeKeeper));
+  }
+
+  public void invalidate(WebUrl webUrl) {
+    invalidate(nonNull("webUrl", webUrl).toUri());
+  }
+
+  public synchronized void invalidateAll() {
+    entries.clear();
+    sizeInBytes = 0L;
+  }
+
+  public synchronized long getSizeInBytes() {
+    return sizeInBytes;
+  }
+
+  public synchronized int getEntryCount() {
+    return entries.size();
+  }
+
+  public long getCapacityInBytes() {
+    return capacityInBytes;
+  }
+
+  public Snapshot snapshot() {
+    return new Snapshot(hits.sum(), revalidations.sum(), misses.sum(), evictions.sum());
+  }
+
+  ParsedWebResponse send(
+    HttpRequest request,
+    ThrowingFunction<HttpRequest, HttpResponse<String>> sender) throws Exception {
+
+    final var lookup = lookup(request);
+    if (lookup.fresh() != null) {
+      return lookup.fresh();
+    }
+
+    final var sentAt = timeKeeper.getNanoTime();
+    return onResponse(lookup, sender.applyThrows(lookup.request()), sentAt);
+  }
+
+  CompletableFuture<ParsedWebResponse> sendAsync(
+    HttpRequest request,
+    Function<HttpRequest, CompletableFuture<HttpResponse<String>>> sender) {
+
+    final var lookup = lookup(request);
+    if (lookup.fresh() != null) {
+      return CompletableFuture.completedFuture(lookup.fresh());
+    }
+
+    final var sentAt = timeKeeper.getNanoTime();
+    return sender.apply(lookup.request()).thenApply(response -> onResponse(lookup, response, sentAt));
+  }
+
+  /**
+   * Invalidates the cached response of the request's URL, if the request (e.g. a POST) may have modified it.
+   */
+  void onUnsafeResponse(HttpRequest request, int statusCode) {
+    if (statusCode < 400) {
+      invalidate(request.uri());
+    }
+  }
+
+  private Lookup lookup(HttpRequest request) {
+    final var requestDirectives = parseCacheControl(request.headers());
+    if (!GET.equals(request.method())
+      || requestDirectives.containsKey(NO_STORE)
+      || BYPASSING_REQUEST_HEADERS.stream().anyMatch(name -> request.headers().firstValue(name).isPresent())) {
+
+      return new Lookup(request, null, null, false);
+    }
+
+    final Entry entry;
+    synchronized (this) {
+      entry = entries.get(request.uri());
+    }
+
+    if (entry == null || !entry.matchesVary(request)) {
+      return new Lookup(request, null, null, true);
+    }
+
+    final var age = timeKeeper.getNanoTime() - entry.receivedAtNanos() + entry.initialAgeInNanos();
+    final var maxAge = seconds(requestDirectives.get(MAX_AGE));
+    final var isFresh = age < entry.freshnessLifetimeInNanos()
+      && !requestDirectives.containsKey(NO_CACHE)
+      && (maxAge.isEmpty() || age <= SECONDS.toNanos(maxAge.getAsLong()));
+
+    if (isFresh) {
+      hits.increment();
+      return new Lookup(request, entry.toResponse(entry.headers()), null, true);
+    }
+
+    if (entry.etag() == null && entry.lastModified() == null) {
+      return new Lookup(request, null, null, true);
+    }
+
+    final var conditionalRequest = HttpRequest.newBuilder(request, (name, value) -> true);
+    if (entry.etag() != null) {
+      conditionalRequest.setHeader(IF_NONE_MATCH, entry.etag());
+    }
+    if (entry.lastModified() != null) {
+      conditionalRequest.setHeader(IF_MODIFIED_SINCE, entry.lastModified());
+    }
+    return new Lookup(conditionalRequest.build(), null, entry, true);
+  }
+
+  private ParsedWebResponse onResponse(Lookup lookup, HttpResponse<String> response, long sentAt) {
+    final var receivedAt = timeKeeper.getNanoTime();
+    final var uri = lookup.request().uri();
+    final var stale = lookup.stale();
+
+    if (stale != null && response.statusCode() == NOT_MODIFIED) {
+      revalidations.increment();
+      final var headers = merge(stale.headers(), response.headers());
+      store(uri, toEntry(lookup.request(), stale.statusCode(), stale.body(), headers, sentAt, receivedAt));
+      return stale.toResponse(headers);
+    }
+
+    misses.increment();
+    if (lookup.isStorable()) {
+      store(uri, toEntry(lookup.request(), response.statusCode(), response.body(), response.headers(), sentAt,
+        receivedAt));
+    }
+    return new ParsedWebResponse(response);
+  }
+
+  /**
+   * @return The response as a cache entry, or null if it must not be stored.
+   */
+  private static Entry toEntry(
+    HttpRequest request,
+    int statusCode,
+    String body,
+    HttpHeaders headers,
+    long sentAt,
+    long receivedAt) {
+
+    final var directives = parseCacheControl(headers);
+    final var varyHeaders = headers.allValues(VARY).stream()
+      .flatMap(value -> Arrays.stream(value.split(",")))
+      .map(name -> name.trim().toLowerCase(Locale.ROOT))
+      .filter(name -> !name.isEmpty())
+      .collect(Collectors.toSet());
+
+    if (!CACHEABLE_STATUS_CODES.contains(statusCode)
+      || body == null
+      || directives.containsKey(NO_STORE)
+      || varyHeaders.contains("*")) {
+      return null;
+    }
+
+    final var etag = headers.firstValue(ETAG).orElse(null);
+    final var lastModified = headers.firstValue(LAST_MODIFIED).orElse(null);
+    final var freshnessLifetime = directives.containsKey(NO_CACHE) ? 0L : freshnessLifetimeInNanos(directives, headers);
+    if (freshnessLifetime <= 0L && etag == null && lastModified == null) {
+      return null;
+    }
+
+    // The time spent in caches along the way, plus the round trip, which is conservatively counted as age as well
+    final var initialAge = SECONDS.toNanos(seconds(headers.firstValue(AGE).orElse(null)).orElse(0L))
+      + (receivedAt - sentAt);
+
+    final var varyValues = varyHeaders.stream()
+      .collect(Collectors.toMap(name -> name, name -> request.headers().allValues(name)));
+
+    return new Entry(statusCode, body, headers, etag, lastModified, varyValues, receivedAt, initialAge,
+      freshnessLifetime, 2L * body.length());
+  }
+
+  private static long freshnessLifetimeInNanos(Map<String, String> directives, HttpHeaders headers) {
+    if (directives.containsKey(MAX_AGE)) {
+      return SECONDS.toNanos(seconds(directives.get(MAX_AGE)).orElse(0L));
+    }
+
+    return headers.firstValue(EXPIRES)
+      .map(expires -> parseDate(expires)
+        // An invalid date (e.g. "0") means already expired
+        .map(expiresAt -> Duration.between(
+          headers.firstValue(DATE).flatMap(WebResponseCache::parseDate).orElseGet(ZonedDateTime::now), expiresAt))
+        .map(lifetime -> SECONDS.toNanos(Math.min(lifetime.getSeconds(), MAX_DELTA_SECONDS)))
+        .orElse(0L))
+      .orElse(0L);
+  }
+
+  private synchronized void store(URI uri, Entry entry) {
+    if (entry == null || entry.weight() > capacityInBytes) {
+      invalidate(uri);
+      return;
+    }
+
+    final var previous = entries.put(uri, entry);
+    if (previous != null) {
+      sizeInBytes -= previous.weight();
+    }
+    sizeInBytes += entry.weight();
+    evictIfNeeded();
+  }
+
+  private synchronized void invalidate(URI uri) {
+    final var previous = entries.remove(uri);
+    if (previous != null) {
+      sizeInBytes -= previous.weight();
+    }
+  }
+
+  private void evictIfNeeded() {
+    final Iterator<Entry> eldestFirst = entries.values().iterator();
+    while (sizeInBytes > capacityInBytes && eldestFirst.hasNext()) {
+      sizeInBytes -= eldestFirst.next().weight();
+      eldestFirst.remove();
+      evictions.increment();
+    }
+  }
+
+  /**
+   * The headers of a 304 response update the stored ones (RFC 9111 section 4.3.4).
+   */
+  private static HttpHeaders merge(HttpHeaders stored, HttpHeaders notModified) {
+    final var merged = new TreeMap<String, List<String>>(String.CASE_INSENSITIVE_ORDER);
+    merged.putAll(stored.map());
+    notModified.map().forEach((name, values) -> {
+      if (!name.equalsIgnoreCase(CONTENT_LENGTH)) {
+        merged.put(name, values);
+      }
+    });
+    return HttpHeaders.of(merged, (name, value) -> true);
+  }
+
+  private static Map<String, String> parseCacheControl(HttpHeaders headers) {
+    final var directives = new HashMap<String, String>();
+    headers.allValues(CACHE_CONTROL).stream()
+      .flatMap(value -> Arrays.stream(value.split(",")))
+      .map(String::trim)
+      .filter(directive -> !directive.isEmpty())
+      .forEach(directive -> {
+        final var separator = directive.indexOf('=');
+        final var name = (separator < 0 ? directive : directive.substring(0, separator)).trim().toLowerCase(Locale.ROOT);
+        final var argument = separator < 0 ? "" : directive.substring(separator + 1).trim().replace("\"", "");
+        directives.putIfAbsent(name, argument);
+      });
+    return directives;
+  }
+
+  /**
+   * @return The given delta-seconds, capped to MAX_DELTA_SECONDS (RFC 9111 section 1.2.2), so that lifetimes and ages
+   * can be safely added up in nanos.
+   */
+  private static OptionalLong seconds(String value) {
+    if (value == null) {
+      return OptionalLong.empty();
+    }
+    final var digits = value.trim();
+    try {
+      return OptionalLong.of(Math.min(Math.max(0L, Long.parseLong(digits)), MAX_DELTA_SECONDS));
+    } catch (NumberFormatException ex) {
+      // Too large for a long
+      return !digits.isEmpty() && digits.chars().allMatch(Character::isDigit)
+        ? OptionalLong.of(MAX_DELTA_SECONDS)
+        : OptionalLong.empty();
+    }
+  }
+
+  private static Optional<ZonedDateTime> parseDate(String value) {
+    try {
+      return Optional.of(ZonedDateTime.parse(value.trim(), DateTimeFormatter.RFC_1123_DATE_TIME));
+    } catch (DateTimeParseException ex) {
+      return Optional.empty();
+    }
+  }
+
+  private WebResponseCache(long capacityInBytes, TimeKeeper timeKeeper) {
+    this.capacityInBytes = capacityInBytes;
+    this.timeKeeper = timeKeeper;
+    this.entries = new LinkedHashMap<>(16, 0.75f, true);
+    this.sizeInBytes = 0L;
+    this.hits = new LongAdder();
+    this.revalidations = new LongAdder();
+    this.misses = new LongAdder();
+    this.evictions = new LongAdder();
+  }
+
+  private final long capacityInBytes;
+  private final TimeKeeper timeKeeper;
+  private final Map<URI, Entry> entries;
+  private long sizeInBytes;
+  private final LongAdder hits;
+  private final LongAdder revalidations;
+  private final LongAdder misses;
+  private final LongAdder evictions;
+
+  private static final String GET = "GET";
+  private static final int NOT_MODIFIED = 304;
+  // Cacheable by default, RFC 9110 section 15.1
+  private static final Set<Integer> CACHEABLE_STATUS_CODES = Set.of(200, 203, 204, 300, 301, 308, 404, 405, 410, 414,
+    501);
+
+  private static final String CACHE_CONTROL = "Cache-Control";
+  private static final String EXPIRES = "Expires";
+  private static final String DATE = "Date";
+  private static final String AGE = "Age";
+  private static final String ETAG = "ETag";
+  private static final String LAST_MODIFIED = "Last-Modified";
+  private static final String VARY = "Vary";
+  private static final String CONTENT_LENGTH = "Content-Length";
+  private static final String IF_NONE_MATCH = "If-None-Match";
+  private static final String IF_MODIFIED_SINCE = "If-Modified-Since";
+  private static final List<String> BYPASSING_REQUEST_HEADERS = List.of(IF_NONE_MATCH, IF_MODIFIED_SINCE, "If-Match",
+    "If-Unmodified-Since", "If-Range", "Range");
+
+  private static final String NO_STORE = "no-store";
+  private static final String NO_CACHE = "no-cache";
+  private static final String MAX_AGE = "max-age";
+  private static final long MAX_DELTA_SECONDS = 2_147_483_648L;
+
+  /**
+   * @param revalidatedCount Stale responses confirmed by the server (304), i.e. served without transferring the body.
+   * @param missCount Responses transferred from the server, including failed revalidations.
+   */
+  public record Snapshot(long hitCount, long revalidatedCount, long missCount, long evictionCount) {
+
+    public double hitRatio() {
+      final var served = hitCount + revalidatedCount + missCount;
+      return served == 0 ? 1.0 : (hitCount + revalidatedCount) / (double) served;
+    }
+  }
+
+  /**
+   * @param fresh The cached response, if it can be served as is.
+   * @param stale The cached response being revalidated by the request, if any.
+   */
+  private record Lookup(HttpRequest request, ParsedWebResponse fresh, Entry stale, boolean isStorable) {}
+
+  private record Entry(
+    int statusCode,
+    String body,
+    HttpHeaders headers,
+    String etag,
+    String lastModified,
+    Map<String, List<String>> varyValues,
+    long receivedAtNanos,
+    long initialAgeInNanos,
+    long freshnessLifetimeInNanos,
+    long weight) {
+
+    private boolean matchesVary(HttpRequest request) {
+      return varyValues.entrySet().stream()
+        .allMatch(vary -> request.headers().allValues(vary.getKey()).equals(vary.getValue()));
+    }
+
+    private ParsedWebResponse toResponse(HttpHeaders headers) {
+      return new ParsedWebResponse(statusCode, body, headers);
+    }
+  }
+}
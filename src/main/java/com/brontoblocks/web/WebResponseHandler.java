@@ -2,6 +2,7 @@ package com.brontoblocks.web;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.util.function.Function;
 
 import static java.util.Optional.ofNullable;
@@ -31,6 +32,14 @@ public class WebResponseHandler<R> {
     return handleRequest(webRequest.get().getOrThrow());
   }
 
+  /**
+   * Maps the response once it arrives, on the thread completing the request. Mapping functions should therefore not
+   * block.
+   */
+  public CompletableFuture<R> executeAsync(AsyncWebRequest asyncWebRequest) {
+    return asyncWebRequest.get().thenApply(this::handleRequest);
+  }
+
   protected void executeNoResponse(WebRequest webRequest) {
     handleRequest(webRequest.get().getOrThrow());
   }
@@ -0,0 +1,88 @@
+package com.brontoblocks.web;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Package-private API (WebRequest.get()) is exercised, hence the package
+class WebResponseCacheTest {
+
+  @BeforeEach
+  void startServer() throws Exception {
+    server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+    server.createContext("/", exchange -> {
+      requestCount.incrementAndGet();
+      final var body = "cached".getBytes(StandardCharsets.UTF_8);
+      final var header = cacheHeader.get();
+      exchange.getResponseHeaders().add(header[0], header[1]);
+      exchange.sendResponseHeaders(200, body.length);
+      exchange.getResponseBody().write(body);
+      exchange.close();
+    });
+    server.start();
+  }
+
+  @AfterEach
+  void stopServer() {
+    server.stop(0);
+  }
+
+  @ParameterizedTest
+  @ValueSource(strings = {
+    "Cache-Control|max-age=9223372036854775807",
+    "Cache-Control|max-age=99999999999999999999",
+    "Age|9223372036854775807",
+    "Expires|Fri, 31 Dec 9999 23:59:59 GMT"})
+  void verify_that_oversized_lifetimes_and_ages_do_not_fail_the_request(String header) {
+
+    // Given
+    cacheHeader.set(header.split("\\|"));
+    final var cache = WebResponseCache.create(1024 * 1024);
+    final var client = WebClient.create(WebClientConfiguration.builder().withResponseCache(cache).build());
+    final var url = WebUrl.http(server.getAddress().getHostString(), server.getAddress().getPort());
+
+    // When
+    final var first = client.get(url).get();
+    final var second = client.get(url).get();
+
+    // Then
+    assertTrue(first.hasSucceeded());
+    assertTrue(second.hasSucceeded());
+    assertEquals("cached", second.getOrThrow().body());
+  }
+
+  @ParameterizedTest
+  @ValueSource(strings = {"max-age=9223372036854775807", "max-age=99999999999999999999"})
+  void verify_that_a_response_with_an_oversized_max_age_is_served_from_the_cache(String cacheControl) {
+
+    // Given
+    cacheHeader.set(new String[] {"Cache-Control", cacheControl});
+    final var cache = WebResponseCache.create(1024 * 1024);
+    final var client = WebClient.create(WebClientConfiguration.builder().withResponseCache(cache).build());
+    final var url = WebUrl.http(server.getAddress().getHostString(), server.getAddress().getPort());
+
+    // When
+    client.get(url).get().getOrThrow();
+    final var cached = client.get(url).get().getOrThrow();
+
+    // Then
+    assertEquals("cached", cached.body());
+    assertEquals(1, requestCount.get());
+    assertEquals(1L, cache.snapshot().hitCount());
+  }
+
+  private HttpServer server;
+  private final AtomicInteger requestCount = new AtomicInteger();
+  private final AtomicReference<String[]> cacheHeader = new AtomicReference<>();
+}
@@ -0,0 +1,177 @@
+package thread;
+
+import com.brontoblocks.thread.AdaptivePoolSizer;
+import com.brontoblocks.thread.ThreadPoolStats;
+import com.brontoblocks.utils.LatencyHistogram;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static com.brontoblocks.chrono.TimeKeeper.LinearTimeKeeper;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AdaptivePoolSizerTest {
+
+  private static final Duration TICK = Duration.ofMillis(1);
+  private static final int TICKS_PER_SAMPLE = 1_000;
+
+  @ParameterizedTest
+  @MethodSource("stepChangeScenarios")
+  void verify_that_AdaptivePoolSizer_converges_quickly_after_a_step_change_in_load(
+      int tasksPerSecondBefore,
+      int tasksPerSecondAfter,
+      int executionTimeInMillis,
+      int samplesToConverge) {
+
+    // Given
+    final var timeKeeper = LinearTimeKeeper.of(TICK);
+    final var sizer = AdaptivePoolSizer.builder(1, 500)
+        .withInitialPoolSize(4)
+        .withTargetQueueLatency(Duration.ofMillis(10))
+        .withTargetUtilization(0.8)
+        .withSamplingInterval(Duration.ofMillis(TICKS_PER_SAMPLE))
+        .withTimeKeeper(timeKeeper)
+        .build();
+
+    final var pool = new SimulatedPool(timeKeeper, sizer, executionTimeInMillis);
+
+    // When
+    pool.run(tasksPerSecondBefore, 20);
+    final var samplesAfterStep = pool.run(tasksPerSecondAfter, 20);
+
+    // Then
+    final var requiredThreads = tasksPerSecondAfter * executionTimeInMillis / 1_000;
+    final var settled = samplesAfterStep.subList(samplesToConverge, samplesAfterStep.size());
+
+    settled.forEach(sample -> {
+      assertTrue(sample.poolSize() >= requiredThreads,
+          "Pool size: %d below the required threads: %d".formatted(sample.poolSize(), requiredThreads));
+      assertTrue(sample.poolSize() <= 2 * requiredThreads + 2,
+          "Pool size: %d far above the required threads: %d".formatted(sample.poolSize(), requiredThreads));
+      assertTrue(sample.meanQueueWaitInMillis() <= 10.0,
+          "Mean queue wait: %.2f millis above target".formatted(sample.meanQueueWaitInMillis()));
+    });
+  }
+
+  @Test
+  void verify_that_AdaptivePoolSizer_respects_its_bounds() {
+
+    // Given
+    final var timeKeeper = LinearTimeKeeper.of(TICK);
+    final var sizer = AdaptivePoolSizer.builder(2, 16)
+        .withInitialPoolSize(64)
+        .withSamplingInterval(Duration.ofMillis(TICKS_PER_SAMPLE))
+        .withTimeKeeper(timeKeeper)
+        .build();
+
+    final var pool = new SimulatedPool(timeKeeper, sizer, 10);
+    assertEquals(16, sizer.getPoolSize());
+
+    // When / Then
+    pool.run(3_000, 10).forEach(sample -> assertEquals(16, sample.poolSize()));
+    pool.run(0, 30);
+    assertEquals(2, sizer.getPoolSize());
+  }
+
+  private static Stream<Arguments> stepChangeScenarios() {
+    return Stream.of(
+        Arguments.of(100, 8_000, 10, 3),   // spike: 1 -> 80 busy threads
+        Arguments.of(8_000, 100, 10, 8),   // drop: 80 -> 1 busy threads
+        Arguments.of(500, 2_000, 50, 3),   // spike of slow tasks: 25 -> 100 busy threads
+        Arguments.of(2_000, 4_000, 2, 3)   // doubling of fast tasks: 4 -> 8 busy threads
+    );
+  }
+
+  /**
+   * A discrete time model of a thread pool with a FIFO queue: every tick (1 milli) tasks arrive at a constant rate,
+   * idle threads pick up queued tasks and busy threads make progress. At the end of every sampling interval the sizer
+   * is fed with the cumulative metrics of the pool and the pool is resized accordingly.
+   */
+  private static final class SimulatedPool {
+
+    private SimulatedPool(LinearTimeKeeper timeKeeper, AdaptivePoolSizer sizer, int executionTimeInMillis) {
+      this.timeKeeper = timeKeeper;
+      this.sizer = sizer;
+      this.executionTimeInMillis = executionTimeInMillis;
+      this.queue = new ArrayDeque<>();
+      this.running = new ArrayList<>();
+      this.poolSize = sizer.getPoolSize();
+      sizer.resize(stats());
+    }
+
+    private List<Sample> run(int tasksPerSecond, int samples) {
+      final var result = new ArrayList<Sample>(samples);
+      for (int i = 0; i < samples; i++) {
+        final var queueWaitCountBefore = queueWaitCount;
+        final var queueWaitSumBefore = queueWaitSumInMillis;
+
+        for (int tick = 0; tick < TICKS_PER_SAMPLE; tick++) {
+          tick(tasksPerSecond);
+        }
+
+        final var waited = queueWaitCount - queueWaitCountBefore;
+        final var meanQueueWait = waited == 0 ? 0.0 : (queueWaitSumInMillis - queueWaitSumBefore) / (double) waited;
+
+        poolSize = sizer.resize(stats());
+        result.add(new Sample(poolSize, meanQueueWait));
+      }
+      return result;
+    }
+
+    private void tick(int tasksPerSecond) {
+      timeKeeper.registerNewTick();
+      final var now = timeKeeper.getNanoTime();
+
+      arrivalDebt += tasksPerSecond / 1_000.0;
+      while (arrivalDebt >= 1.0) {
+        queue.add(now);
+        arrivalDebt -= 1.0;
+      }
+
+      while (running.size() < poolSize && !queue.isEmpty()) {
+        final var waitInMillis = (now - queue.poll()) / TICK.toNanos();
+        queueWaitCount++;
+        queueWaitSumInMillis += waitInMillis;
+        running.add(new int[]{executionTimeInMillis});
+      }
+
+      running.removeIf(remaining -> {
+        if (--remaining[0] > 0) {
+          return false;
+        }
+        completedTaskCount++;
+        return true;
+      });
+    }
+
+    private ThreadPoolStats stats() {
+      final var millis = TICK.toNanos();
+      return new ThreadPoolStats("simulated", poolSize, running.size(), poolSize, poolSize, queue.size(),
+          completedTaskCount, 0L,
+          new LatencyHistogram.Snapshot(new long[65], queueWaitCount, queueWaitSumInMillis * millis, 0L),
+          new LatencyHistogram.Snapshot(new long[65], completedTaskCount,
+              completedTaskCount * executionTimeInMillis * millis, 0L));
+    }
+
+    private final LinearTimeKeeper timeKeeper;
+    private final AdaptivePoolSizer sizer;
+    private final int executionTimeInMillis;
+    private final ArrayDeque<Long> queue;
+    private final List<int[]> running;
+    private int poolSize;
+    private double arrivalDebt;
+    private long completedTaskCount;
+    private long queueWaitCount;
+    private long queueWaitSumInMillis;
+  }
+
+  private record Sample(int poolSize, double meanQueueWaitInMillis) { }
+}
@@ -0,0 +1,63 @@
+package thread;
+
+import com.brontoblocks.thread.ThreadPoolRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class InstrumentedForkJoinPoolTest {
+
+  private enum Pools { COMPUTE }
+
+  @Test
+  void verify_that_CompletableFuture_async_tasks_complete_without_growing_the_pool() {
+
+    // Given
+    final var registry = new ThreadPoolRegistry<Pools>();
+    registry.storeForkJoinPool(Pools.COMPUTE, 2, false);
+    final var pool = registry.requestForkJoinPool(Pools.COMPUTE).orElseThrow();
+
+    try {
+      // When
+      final var futures = new ArrayList<CompletableFuture<Integer>>();
+      for (int i = 0; i < 10; i++) {
+        final var value = i;
+        futures.add(CompletableFuture.supplyAsync(() -> value, pool));
+      }
+
+      // Then
+      assertTimeoutPreemptively(Duration.ofSeconds(10), () ->
+          assertEquals(45, futures.stream().mapToInt(CompletableFuture::join).sum()));
+      assertTrue(pool.getPoolSize() <= 2, "Pool size: %d above parallelism".formatted(pool.getPoolSize()));
+    } finally {
+      pool.shutdownNow();
+    }
+  }
+
+  @Test
+  void verify_that_completions_of_submitted_runnables_and_callables_are_counted() throws Exception {
+
+    // Given
+    final var registry = new ThreadPoolRegistry<Pools>();
+    registry.storeForkJoinPool(Pools.COMPUTE, 2, false);
+    final var pool = registry.requestForkJoinPool(Pools.COMPUTE).orElseThrow();
+
+    // When
+    pool.execute(() -> { });
+    pool.submit(() -> { }).get();
+    assertEquals(42, pool.submit(() -> 42).get());
+    pool.shutdown();
+    assertTrue(pool.awaitTermination(10, TimeUnit.SECONDS));
+
+    // Then
+    final var stats = registry.getStats(Pools.COMPUTE).orElseThrow();
+    assertEquals(3L, stats.completedTaskCount());
+  }
+}
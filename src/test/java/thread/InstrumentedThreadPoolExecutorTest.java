@@ -0,0 +1,75 @@
+package thread;
+
+import com.brontoblocks.thread.RejectionPolicies;
+import com.brontoblocks.thread.ThreadPoolRegistry;
+import com.brontoblocks.thread.ThreadPoolSpec;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class InstrumentedThreadPoolExecutorTest {
+
+  private enum Pools { WORKERS }
+
+  @Test
+  void verify_that_tasks_which_blocked_until_queued_are_timed_and_not_counted_as_rejected() throws Exception {
+
+    // Given
+    final var registry = new ThreadPoolRegistry<Pools>();
+    registry.storeThreadPool(Pools.WORKERS, ThreadPoolSpec.builder(1, 1)
+        .withArrayBlockingQueue(1)
+        .withRejectionPolicy(RejectionPolicies.blockWithTimeout(Duration.ofSeconds(10)))
+        .build());
+    final var pool = registry.requestThreadPool(Pools.WORKERS).orElseThrow();
+
+    // When
+    for (int i = 0; i < 3; i++) {
+      pool.execute(() -> sleep(50));
+    }
+    pool.shutdown();
+    assertTrue(pool.awaitTermination(10, TimeUnit.SECONDS));
+
+    // Then
+    final var stats = registry.getStats(Pools.WORKERS).orElseThrow();
+    assertEquals(3L, stats.completedTaskCount());
+    assertEquals(0L, stats.rejectedTaskCount());
+    assertEquals(3L, stats.queueWaitTime().count());
+    assertEquals(3L, stats.executionTime().count());
+  }
+
+  @Test
+  void verify_that_tasks_refused_by_the_rejection_policy_are_counted_as_rejected() throws Exception {
+
+    // Given
+    final var registry = new ThreadPoolRegistry<Pools>();
+    registry.storeThreadPool(Pools.WORKERS, ThreadPoolSpec.builder(1, 1)
+        .withArrayBlockingQueue(1)
+        .withRejectionPolicy(RejectionPolicies.blockWithTimeout(Duration.ofMillis(10)))
+        .build());
+    final var pool = registry.requestThreadPool(Pools.WORKERS).orElseThrow();
+
+    // When
+    pool.execute(() -> sleep(500));
+    pool.execute(() -> sleep(500));
+    assertThrows(RejectedExecutionException.class, () -> pool.execute(() -> { }));
+    pool.shutdownNow();
+    assertTrue(pool.awaitTermination(10, TimeUnit.SECONDS));
+
+    // Then
+    assertEquals(1L, registry.getStats(Pools.WORKERS).orElseThrow().rejectedTaskCount());
+  }
+
+  private static void sleep(long millis) {
+    try {
+      Thread.sleep(millis);
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}